@@ -0,0 +1,71 @@
+#!/usr/bin/env bash
+#
+# Time to first request: from launching the JVM to the first successful GET /widgets, for the
+# default configuration, the fast-startup profile, and the fast-startup profile with the
+# class-data-sharing archive. Build both the executable jar and the archive first with:
+#
+#   mvn package -Pcds -DskipTests
+#
+# Usage: scripts/startup-benchmark.sh [runs]   (5 runs per configuration by default)
+# The java on the PATH must be the JDK the archive was dumped with.
+
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+TARGET="$(cd "$(dirname "$0")/../target" && pwd)"
+JAR=$(ls "$TARGET"/board-*.jar | grep -v -- '-cds.jar$' | head -n 1)
+CLASSPATH_FILE="$TARGET/cds/classpath"
+ARCHIVE="$TARGET/cds/board.jsa"
+
+if [[ ! -f "$JAR" || ! -f "$CLASSPATH_FILE" || ! -f "$ARCHIVE" ]]; then
+    echo "Build the application and its archive first: mvn package -Pcds -DskipTests" >&2
+    exit 1
+fi
+
+now_millis() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# Prints the milliseconds from launching the command to the first 200 from GET /widgets
+time_to_first_request() {
+    local start pid elapsed
+    start=$(now_millis)
+    "$@" --server.port="$PORT" > /dev/null 2>&1 &
+    pid=$!
+
+    until curl -sf -o /dev/null "http://localhost:$PORT/widgets"; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "The application exited before serving a request: $*" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    elapsed=$(( $(now_millis) - start ))
+
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    echo "$elapsed"
+}
+
+# Runs a configuration RUNS times, after one discarded run warming the file system cache
+measure() {
+    local name=$1
+    shift
+    time_to_first_request "$@" > /dev/null
+
+    local times=()
+    for ((run = 0; run < RUNS; run++)); do
+        times+=("$(time_to_first_request "$@")")
+    done
+
+    printf '%s\n' "${times[@]}" | sort -n | awk -v name="$name" '
+        { times[NR] = $1 }
+        END { printf "%-22s %8d %8d %8d\n", name, times[1], times[int((NR + 1) / 2)], times[NR] }'
+}
+
+printf "%-22s %8s %8s %8s\n" "configuration" "min ms" "p50 ms" "max ms"
+measure "default" java -jar "$JAR"
+measure "fast-startup" java -jar "$JAR" --spring.profiles.active=fast-startup
+measure "fast-startup + CDS" java -Xshare:on -XX:SharedArchiveFile="$ARCHIVE" -cp "$(cat "$CLASSPATH_FILE")" \
+    com.miro.board.BoardApplication --spring.profiles.active=fast-startup
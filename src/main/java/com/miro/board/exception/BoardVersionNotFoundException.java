@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class BoardVersionNotFoundException extends Exception {
+    public BoardVersionNotFoundException(long version) {
+        super("Board version " + version + " is no longer available.");
+    }
+}
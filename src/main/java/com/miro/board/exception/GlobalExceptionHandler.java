@@ -1,5 +1,6 @@
 package com.miro.board.exception;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,6 +16,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
     @ExceptionHandler({WidgetNotFoundException.class, NotFoundException.class})
@@ -23,11 +25,27 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
     }
 
 
-    @ExceptionHandler(InvalidPageSizeException.class)
+    @ExceptionHandler({InvalidPageSizeException.class, InvalidSortException.class, InvalidTileException.class, InvalidImportException.class,
+            InvalidHistoryStepsException.class, InvalidZRangeException.class, InvalidParentException.class})
     public ResponseEntity<ErrorResponse> handleInvalidPageSize(Exception ex) {
         return getErrorResponseEntity(ex, HttpStatus.UNPROCESSABLE_ENTITY);
     }
 
+    @ExceptionHandler(BoardVersionNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleBoardVersionNotFound(Exception ex) {
+        return getErrorResponseEntity(ex, HttpStatus.GONE);
+    }
+
+    @ExceptionHandler(ReadOnlyReplicaException.class)
+    public ResponseEntity<ErrorResponse> handleReadOnlyReplica(Exception ex) {
+        return getErrorResponseEntity(ex, HttpStatus.METHOD_NOT_ALLOWED);
+    }
+
+    @ExceptionHandler(StaleReplicaException.class)
+    public ResponseEntity<ErrorResponse> handleStaleReplica(Exception ex) {
+        return getErrorResponseEntity(ex, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @Override
     protected ResponseEntity<Object> handleMethodArgumentNotValid(MethodArgumentNotValidException ex,
                                                                   HttpHeaders headers,
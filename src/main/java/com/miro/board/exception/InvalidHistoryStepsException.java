@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidHistoryStepsException extends Exception {
+    public InvalidHistoryStepsException() {
+        super("Steps must be at least 1");
+    }
+}
@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidImportException extends Exception {
+    public InvalidImportException(long line, String message) {
+        super("Line " + line + ": " + message);
+    }
+}
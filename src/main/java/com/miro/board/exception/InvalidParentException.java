@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidParentException extends Exception {
+    public InvalidParentException(String message) {
+        super(message);
+    }
+}
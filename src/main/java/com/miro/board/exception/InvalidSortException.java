@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidSortException extends Exception {
+    public InvalidSortException(String message) {
+        super(message);
+    }
+}
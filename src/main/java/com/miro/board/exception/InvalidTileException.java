@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidTileException extends Exception {
+    public InvalidTileException(int maxZoom) {
+        super("Zoom must be between 0 and " + maxZoom);
+    }
+}
@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class InvalidZRangeException extends Exception {
+    public InvalidZRangeException(String message) {
+        super(message);
+    }
+}
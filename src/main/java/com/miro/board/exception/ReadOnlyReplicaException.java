@@ -0,0 +1,7 @@
+package com.miro.board.exception;
+
+public class ReadOnlyReplicaException extends Exception {
+    public ReadOnlyReplicaException() {
+        super("Widgets cannot be modified on a read-only replica.");
+    }
+}
@@ -0,0 +1,9 @@
+package com.miro.board.exception;
+
+public class StaleReplicaException extends Exception {
+    public StaleReplicaException(long lagMillis) {
+        super(lagMillis == Long.MAX_VALUE
+                ? "Replica has not synchronized with the leader yet."
+                : "Replica is " + lagMillis + " ms behind the leader.");
+    }
+}
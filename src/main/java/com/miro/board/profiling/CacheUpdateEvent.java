@@ -0,0 +1,22 @@
+package com.miro.board.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.miro.board.CacheUpdate")
+@Label("Cache Update")
+@Category({"Board", "In-Memory Repository"})
+@Description("New version of the in-memory board published to readers")
+@StackTrace(false)
+public class CacheUpdateEvent extends Event {
+
+    @Label("Widgets")
+    public int widgets;
+
+    @Label("Version")
+    public long version;
+}
@@ -0,0 +1,82 @@
+package com.miro.board.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Starts (POST) and stops (DELETE) a Java Flight Recorder recording of the board with the JDK's
+ * default settings, which have an overhead low enough to keep it running in production. The
+ * recording includes the board events and is written to a new file in the configured directory
+ * when it is stopped.
+ * */
+@Component
+@Endpoint(id = "flightrecording")
+public class FlightRecordingEndpoint {
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private final Path recordingDirectory;
+
+    // Guarded by this
+    private Recording recording;
+    private Path recordingFile;
+
+    public FlightRecordingEndpoint(@Value("${flight-recording.directory}") String recordingDirectory) {
+        this.recordingDirectory = Paths.get(recordingDirectory);
+    }
+
+    @ReadOperation
+    public synchronized FlightRecordingStatus status() {
+        return new FlightRecordingStatus(recording != null, recording == null ? null : recording.getStartTime(),
+                recordingFile == null ? null : recordingFile.toAbsolutePath().toString());
+    }
+
+    @WriteOperation
+    public synchronized FlightRecordingStatus start() throws IOException, ParseException {
+        if (recording == null) {
+            Files.createDirectories(recordingDirectory);
+
+            Recording newRecording = new Recording(Configuration.getConfiguration("default"));
+            newRecording.setName("board");
+            newRecording.enable(WidgetLockEvent.class);
+            newRecording.enable(ZIndexCascadeEvent.class);
+            newRecording.enable(CacheUpdateEvent.class);
+            newRecording.setToDisk(true);
+
+            recordingFile = recordingDirectory.resolve("board-" + FILE_NAME_FORMAT.format(Instant.now()) + ".jfr");
+            newRecording.setDestination(recordingFile);
+            newRecording.start();
+
+            recording = newRecording;
+        }
+
+        return status();
+    }
+
+    @DeleteOperation
+    public synchronized FlightRecordingStatus stop() {
+        if (recording != null) {
+            // Stopping writes the recording to its destination
+            recording.stop();
+            recording.close();
+            recording = null;
+        }
+
+        return status();
+    }
+}
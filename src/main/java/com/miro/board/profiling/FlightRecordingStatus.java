@@ -0,0 +1,15 @@
+package com.miro.board.profiling;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class FlightRecordingStatus {
+    private final boolean recording;
+    private final Instant startTime;
+    // File the current recording will be written to when it is stopped, or the last one written
+    private final String file;
+}
@@ -0,0 +1,28 @@
+package com.miro.board.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A mutation of the board holding the WidgetService write lock. The event spans the time the lock
+ * was held and records how long the caller waited for it.
+ * */
+@Name("com.miro.board.WidgetLock")
+@Label("Widget Lock")
+@Category({"Board", "Widgets"})
+@Description("Mutation holding the widget service write lock")
+@StackTrace(false)
+public class WidgetLockEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Wait Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long waitTime;
+}
@@ -0,0 +1,22 @@
+package com.miro.board.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.miro.board.ZIndexCascade")
+@Label("Z-Index Cascade")
+@Category({"Board", "Widgets"})
+@Description("Widgets moved up to make room for a widget at a z-index")
+@StackTrace(false)
+public class ZIndexCascadeEvent extends Event {
+
+    @Label("Start Z-Index")
+    public int startZIndex;
+
+    @Label("Shifted Widgets")
+    public int shiftedWidgets;
+}
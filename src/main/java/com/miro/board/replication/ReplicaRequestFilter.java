@@ -0,0 +1,49 @@
+package com.miro.board.replication;
+
+import com.miro.board.exception.ReadOnlyReplicaException;
+import com.miro.board.exception.StaleReplicaException;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of the ReplicaRequestInterceptor: makes the widget routes of a follower
+ * read-only and refuses reads while the follower is too far behind its leader.
+ * */
+public class ReplicaRequestFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    // Read operations that take their arguments in a request body
+    private static final String HIT_TEST_PATH = "/widgets/at";
+
+    private final ReplicationFollower replicationFollower;
+
+    public ReplicaRequestFilter(ReplicationFollower replicationFollower) {
+        this.replicationFollower = replicationFollower;
+    }
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        if (!isRead(request)) {
+            return Mono.error(new ReadOnlyReplicaException());
+        }
+
+        try {
+            replicationFollower.checkStaleness();
+        } catch (StaleReplicaException e) {
+            return Mono.error(e);
+        }
+
+        return next.handle(request);
+    }
+
+    private boolean isRead(ServerRequest request) {
+        HttpMethod method = request.method();
+
+        return method == HttpMethod.GET
+                || method == HttpMethod.HEAD
+                || (method == HttpMethod.POST && request.path().equals(HIT_TEST_PATH));
+    }
+}
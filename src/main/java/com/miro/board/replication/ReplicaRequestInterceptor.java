@@ -0,0 +1,42 @@
+package com.miro.board.replication;
+
+import com.miro.board.exception.ReadOnlyReplicaException;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Makes the widget API of a follower read-only and refuses reads while the follower is too far
+ * behind its leader.
+ * */
+public class ReplicaRequestInterceptor implements HandlerInterceptor {
+
+    // Read operations that take their arguments in a request body
+    private static final String HIT_TEST_PATH = "/widgets/at";
+
+    private final ReplicationFollower replicationFollower;
+
+    public ReplicaRequestInterceptor(ReplicationFollower replicationFollower) {
+        this.replicationFollower = replicationFollower;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!isRead(request)) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        replicationFollower.checkStaleness();
+        return true;
+    }
+
+    private boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+
+        return HttpMethod.GET.matches(method)
+                || HttpMethod.HEAD.matches(method)
+                || (HttpMethod.POST.matches(method) && request.getRequestURI().equals(request.getContextPath() + HIT_TEST_PATH));
+    }
+}
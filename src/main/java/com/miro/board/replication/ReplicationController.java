@@ -0,0 +1,23 @@
+package com.miro.board.replication;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(value = "/replication")
+public class ReplicationController {
+
+    private final ObjectProvider<ReplicationNode> replicationNode;
+
+    public ReplicationController(ObjectProvider<ReplicationNode> replicationNode) {
+        this.replicationNode = replicationNode;
+    }
+
+    @GetMapping("status")
+    public ReplicationStatus getStatus() {
+        ReplicationNode node = replicationNode.getIfAvailable();
+        return node == null ? new ReplicationStatus("standalone", false, 0, 0, 0) : node.getStatus();
+    }
+}
@@ -0,0 +1,188 @@
+package com.miro.board.replication;
+
+import com.miro.board.exception.StaleReplicaException;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.model.Widget;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the local board in sync with a leader instance by applying its mutation log. The follower
+ * knows it reflects the leader's board as of the leader's clock in the last message it applied, so
+ * the lag is the time elapsed since then. Reads are refused once the lag exceeds the configured
+ * bound, and the follower reconnects and reloads a snapshot whenever the connection is lost. The lag
+ * is also published as the board.replication.lag gauge.
+ *
+ * The leader's clock is read against the follower's, so messages waiting to be applied count as lag,
+ * but so does any skew between the clocks of both hosts: a follower whose clock runs ahead reports
+ * that much more lag, and one whose clock runs behind that much less. The hosts are expected to keep
+ * their clocks synchronized, and the staleness bound to be well above the skew they allow.
+ * */
+@Component
+@ConditionalOnProperty(name = "replication.role", havingValue = "follower")
+// Eager under lazy initialization, so it catches up with the leader before serving reads
+@Lazy(false)
+public class ReplicationFollower implements ReplicationNode {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final WidgetService widgetService;
+    private final String leaderHost;
+    private final int leaderPort;
+    private final long maxStalenessMillis;
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile long appliedSequence;
+    // Leader clock of the last applied message, 0 until the first snapshot is loaded
+    private volatile long upToDateAt;
+    private volatile Socket socket;
+
+    public ReplicationFollower(WidgetService widgetService,
+                               @Value("${replication.leader-host}") String leaderHost,
+                               @Value("${replication.leader-port}") int leaderPort,
+                               @Value("${replication.max-staleness-ms}") long maxStalenessMillis,
+                               MeterRegistry meterRegistry) {
+        this.widgetService = widgetService;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.maxStalenessMillis = maxStalenessMillis;
+
+        // Not a number until the first snapshot is loaded, as the follower was never up to date
+        Gauge.builder("board.replication.lag", this, follower -> follower.upToDateAt == 0 ? Double.NaN : follower.getLagMillis())
+                .description("Time since the leader sent the last message the follower applied")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+
+        Thread receiver = new Thread(this::followLeader, "replication-follower");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+
+        Socket currentSocket = socket;
+        if (currentSocket != null) {
+            currentSocket.close();
+        }
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        return new ReplicationStatus("follower", connected, appliedSequence, 0, getLagMillis());
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    // Skewed by the difference between the clocks of the leader and the follower
+    public long getLagMillis() {
+        long lastUpToDate = upToDateAt;
+        return lastUpToDate == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - lastUpToDate);
+    }
+
+    public void checkStaleness() throws StaleReplicaException {
+        long lagMillis = getLagMillis();
+
+        if (lagMillis > maxStalenessMillis) {
+            throw new StaleReplicaException(lagMillis);
+        }
+    }
+
+    private void followLeader() {
+        while (running) {
+            try (Socket leaderSocket = new Socket(leaderHost, leaderPort)) {
+                socket = leaderSocket;
+                connected = true;
+                LOG.info("Following leader at {}:{}", leaderHost, leaderPort);
+
+                DataInputStream input = new DataInputStream(new BufferedInputStream(leaderSocket.getInputStream()));
+                while (running) {
+                    applyMessage(input);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Lost connection to leader at {}:{}, retrying", leaderHost, leaderPort);
+                }
+            } finally {
+                connected = false;
+            }
+
+            sleepBeforeReconnecting();
+        }
+    }
+
+    private void applyMessage(DataInputStream input) throws IOException {
+        byte type = input.readByte();
+        long sequence = input.readLong();
+        long sentAt = input.readLong();
+
+        switch (type) {
+            case ReplicationProtocol.SNAPSHOT:
+                int size = input.readInt();
+                List<Widget> widgets = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    widgets.add(ReplicationProtocol.readWidget(input));
+                }
+                widgetService.applyReplicatedSnapshot(widgets);
+                break;
+            case ReplicationProtocol.SAVED:
+                widgetService.applyReplicatedSave(ReplicationProtocol.readWidget(input));
+                break;
+            case ReplicationProtocol.DELETED:
+                widgetService.applyReplicatedDelete(input.readLong());
+                break;
+            case ReplicationProtocol.Z_INDEX_INCREASED:
+                widgetService.applyReplicatedZIndexIncrease(ReplicationProtocol.readIds(input));
+                break;
+            case ReplicationProtocol.Z_INDEX_DECREASED:
+                widgetService.applyReplicatedZIndexDecrease(ReplicationProtocol.readIds(input));
+                break;
+            case ReplicationProtocol.HEARTBEAT:
+                break;
+            default:
+                throw new IOException("Unknown replication message type " + type);
+        }
+
+        appliedSequence = sequence;
+        upToDateAt = sentAt;
+    }
+
+    private void sleepBeforeReconnecting() {
+        if (!running) {
+            return;
+        }
+
+        try {
+            Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.miro.board.replication;
+
+import com.miro.board.widget.WidgetMutationListener;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.model.Widget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships every mutation applied by {@link WidgetService}, including the implicit z-index shifts, to
+ * the followers connected to its TCP port. Each follower gets its own queue and sender thread, so a
+ * slow follower never blocks the writers; a follower whose queue overflows is disconnected and
+ * catches up again with a new snapshot when it reconnects.
+ * */
+@Component
+@ConditionalOnProperty(name = "replication.role", havingValue = "leader")
+// Eager under lazy initialization, or no mutation would be shipped until the first request
+@Lazy(false)
+public class ReplicationLeader implements WidgetMutationListener, ReplicationNode {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationLeader.class);
+
+    private static final int MAX_PENDING_MESSAGES = 100_000;
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 500;
+
+    private final WidgetService widgetService;
+    private final int port;
+    private final List<FollowerConnection> followers = new CopyOnWriteArrayList<>();
+
+    // Guarded by this, so heartbeats are never queued ahead of the mutation they report
+    private long sequence;
+
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService heartbeatExecutor;
+
+    public ReplicationLeader(WidgetService widgetService, @Value("${replication.port}") int port) {
+        this.widgetService = widgetService;
+        this.port = port;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        widgetService.addMutationListener(this);
+
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replication-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleAtFixedRate(this::sendHeartbeat, HEARTBEAT_INTERVAL_MILLIS, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        LOG.info("Replication leader listening on port {}", getPort());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        heartbeatExecutor.shutdownNow();
+        serverSocket.close();
+        followers.forEach(FollowerConnection::close);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public synchronized ReplicationStatus getStatus() {
+        return new ReplicationStatus("leader", true, sequence, followers.size(), 0);
+    }
+
+    @Override
+    public synchronized void onSaved(Widget previous, Widget saved) {
+        broadcast(encode(ReplicationProtocol.SAVED, ++sequence, output -> ReplicationProtocol.writeWidget(output, saved)));
+    }
+
+    @Override
+    public synchronized void onDeleted(Widget deleted) {
+        broadcast(encode(ReplicationProtocol.DELETED, ++sequence, output -> output.writeLong(deleted.getId())));
+    }
+
+    @Override
+    public synchronized void onZIndexIncreased(List<Long> ids) {
+        broadcast(encode(ReplicationProtocol.Z_INDEX_INCREASED, ++sequence, output -> ReplicationProtocol.writeIds(output, ids)));
+    }
+
+    @Override
+    public synchronized void onZIndexDecreased(List<Long> ids) {
+        broadcast(encode(ReplicationProtocol.Z_INDEX_DECREASED, ++sequence, output -> ReplicationProtocol.writeIds(output, ids)));
+    }
+
+    @Override
+    public synchronized void onReset() {
+        // A leader's board is only replaced through replication if it also follows another leader
+        List<Widget> widgets = getAllWidgets();
+        long snapshotSequence = ++sequence;
+        followers.forEach(follower -> follower.enqueue(output -> writeSnapshot(output, snapshotSequence, widgets)));
+    }
+
+    private synchronized void sendHeartbeat() {
+        broadcast(encode(ReplicationProtocol.HEARTBEAT, sequence, output -> {
+        }));
+    }
+
+    private void acceptFollowers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                FollowerConnection follower = new FollowerConnection(socket);
+
+                // No mutation can be notified while the snapshot is taken, so the follower gets exactly
+                // the mutations after it
+                widgetService.runExclusively(() -> {
+                    synchronized (this) {
+                        List<Widget> widgets = getAllWidgets();
+                        long snapshotSequence = sequence;
+                        follower.enqueue(output -> writeSnapshot(output, snapshotSequence, widgets));
+                        followers.add(follower);
+                    }
+                    return null;
+                });
+
+                follower.start();
+                LOG.info("Follower connected from {}", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOG.warn("Could not accept follower", e);
+                }
+            }
+        }
+    }
+
+    private List<Widget> getAllWidgets() {
+        return widgetService.getAll(PageRequest.of(0, Integer.MAX_VALUE)).getContent();
+    }
+
+    private void broadcast(byte[] message) {
+        followers.forEach(follower -> follower.enqueue(output -> output.write(message)));
+    }
+
+    private static void writeSnapshot(DataOutputStream output, long sequence, List<Widget> widgets) throws IOException {
+        ReplicationProtocol.writeHeader(output, ReplicationProtocol.SNAPSHOT, sequence);
+        output.writeInt(widgets.size());
+        for (Widget widget : widgets) {
+            ReplicationProtocol.writeWidget(output, widget);
+        }
+    }
+
+    // Mutations are encoded once and the same bytes are queued for every follower
+    private static byte[] encode(byte type, long sequence, MessageWriter body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            ReplicationProtocol.writeHeader(output, type, sequence);
+            body.writeTo(output);
+            output.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MessageWriter {
+        void writeTo(DataOutputStream output) throws IOException;
+    }
+
+    private class FollowerConnection {
+        private final Socket socket;
+        private final BlockingQueue<MessageWriter> messages = new ArrayBlockingQueue<>(MAX_PENDING_MESSAGES);
+
+        FollowerConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void start() {
+            Thread sender = new Thread(this::send, "replication-sender-" + socket.getPort());
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        void enqueue(MessageWriter message) {
+            if (!messages.offer(message)) {
+                LOG.warn("Follower {} is too far behind, disconnecting it", socket.getRemoteSocketAddress());
+                close();
+            }
+        }
+
+        void close() {
+            followers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close follower connection", e);
+            }
+        }
+
+        private void send() {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (!socket.isClosed()) {
+                    MessageWriter message = messages.take();
+                    message.writeTo(output);
+
+                    // Batch everything already queued into as few packets as possible
+                    if (messages.isEmpty()) {
+                        output.flush();
+                    }
+                }
+            } catch (IOException e) {
+                LOG.info("Follower {} disconnected", socket.getRemoteSocketAddress());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+    }
+}
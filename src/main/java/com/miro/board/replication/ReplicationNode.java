@@ -0,0 +1,5 @@
+package com.miro.board.replication;
+
+public interface ReplicationNode {
+    ReplicationStatus getStatus();
+}
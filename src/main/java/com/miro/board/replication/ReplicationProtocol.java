@@ -0,0 +1,96 @@
+package com.miro.board.replication;
+
+import com.miro.board.widget.model.Widget;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of the mutation log shipped from a leader to its followers. Every message starts with
+ * its type, the sequence number of the last mutation it reflects and the leader's clock when it was
+ * sent, which is what followers measure their lag against.
+ *
+ * A follower always receives a snapshot of the whole board first, then every mutation applied by
+ * the leader after it, and heartbeats while the board is idle.
+ * */
+final class ReplicationProtocol {
+
+    static final byte SNAPSHOT = 1;
+    static final byte SAVED = 2;
+    static final byte DELETED = 3;
+    static final byte Z_INDEX_INCREASED = 4;
+    static final byte HEARTBEAT = 5;
+    static final byte Z_INDEX_DECREASED = 6;
+
+    // Ids are positive, so a top-level widget is sent with 0 as its parent id
+    private static final long NO_PARENT = 0;
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeHeader(DataOutputStream output, byte type, long sequence) throws IOException {
+        output.writeByte(type);
+        output.writeLong(sequence);
+        output.writeLong(System.currentTimeMillis());
+    }
+
+    static void writeWidget(DataOutputStream output, Widget widget) throws IOException {
+        output.writeLong(widget.getId());
+
+        LocalDateTime lastModified = widget.getLastModified();
+        output.writeBoolean(lastModified != null);
+        if (lastModified != null) {
+            output.writeLong(lastModified.toEpochSecond(ZoneOffset.UTC));
+            output.writeInt(lastModified.getNano());
+        }
+
+        output.writeInt(widget.getWidth());
+        output.writeInt(widget.getHeight());
+        output.writeInt(widget.getX());
+        output.writeInt(widget.getY());
+        output.writeInt(widget.getZ());
+        output.writeLong(widget.getParentId() == null ? NO_PARENT : widget.getParentId());
+    }
+
+    static Widget readWidget(DataInputStream input) throws IOException {
+        long id = input.readLong();
+        LocalDateTime lastModified = input.readBoolean()
+                ? LocalDateTime.ofEpochSecond(input.readLong(), input.readInt(), ZoneOffset.UTC)
+                : null;
+
+        Widget widget = Widget.builder()
+                .id(id)
+                .lastModified(lastModified)
+                .width(input.readInt())
+                .height(input.readInt())
+                .x(input.readInt())
+                .y(input.readInt())
+                .z(input.readInt())
+                .build();
+
+        long parentId = input.readLong();
+        widget.setParentId(parentId == NO_PARENT ? null : parentId);
+        return widget;
+    }
+
+    static void writeIds(DataOutputStream output, List<Long> ids) throws IOException {
+        output.writeInt(ids.size());
+        for (Long id : ids) {
+            output.writeLong(id);
+        }
+    }
+
+    static List<Long> readIds(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(input.readLong());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,16 @@
+package com.miro.board.replication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ReplicationStatus {
+    private final String role;
+    private final boolean connected;
+    // Last mutation sent by the leader or applied by the follower
+    private final long sequence;
+    private final int followers;
+    // How far behind the leader a follower may be, in milliseconds
+    private final long lagMillis;
+}
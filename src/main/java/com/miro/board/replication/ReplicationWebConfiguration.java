@@ -0,0 +1,24 @@
+package com.miro.board.replication;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@ConditionalOnProperty(name = "replication.role", havingValue = "follower")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ReplicationWebConfiguration implements WebMvcConfigurer {
+
+    private final ReplicationFollower replicationFollower;
+
+    public ReplicationWebConfiguration(ReplicationFollower replicationFollower) {
+        this.replicationFollower = replicationFollower;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReplicaRequestInterceptor(replicationFollower)).addPathPatterns("/widgets", "/widgets/**");
+    }
+}
@@ -0,0 +1,59 @@
+package com.miro.board.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Training run of the class-data-sharing build (mvn package -Pcds): once the application is ready,
+ * serves the requests a freshly started instance typically gets first, so the classes they load are
+ * listed and archived along with the startup classes, then exits.
+ * */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "cds.training-run", havingValue = "true")
+public class CdsTrainingRun {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CdsTrainingRun.class);
+
+    private static final List<String> PATHS = List.of("/widgets", "/widgets/1", "/actuator/health");
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+
+        for (String path : PATHS) {
+            LOG.info("Training request GET {} answered {}", path, get(port, path));
+        }
+
+        System.exit(SpringApplication.exit(event.getApplicationContext(), () -> 0));
+    }
+
+    private static int get(int port, String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, path).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    body.readAllBytes();
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.miro.board.startup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.Profiles;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * With the fast-startup profile and the in-memory repository, leaves the DataSource, Hibernate and
+ * Spring Data JPA auto-configurations out: the in-memory board never touches the database, and
+ * starting the connection pool, the entity manager factory and the JPA repositories is most of the
+ * startup time. The SQL and tiered repositories keep them.
+ *
+ * Runs after the configuration files are read, so the repository selected there and the profiles
+ * they activate are taken into account, and keeps any exclusions already configured.
+ * */
+public class FastStartupEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+    public static final String PROFILE = "fast-startup";
+
+    static final String EXCLUDE_PROPERTY = "spring.autoconfigure.exclude";
+    static final String PROPERTY_SOURCE_NAME = "fastStartupExclusions";
+
+    static final List<Class<?>> JPA_AUTO_CONFIGURATIONS = List.of(
+            DataSourceAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class,
+            JpaRepositoriesAutoConfiguration.class
+    );
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!environment.acceptsProfiles(Profiles.of(PROFILE)) || usesDatabase(environment)) {
+            return;
+        }
+
+        Set<String> exclusions = new LinkedHashSet<>();
+        for (String exclusion : StringUtils.tokenizeToStringArray(environment.getProperty(EXCLUDE_PROPERTY, ""), ",")) {
+            exclusions.add(exclusion);
+        }
+        JPA_AUTO_CONFIGURATIONS.forEach(autoConfiguration -> exclusions.add(autoConfiguration.getName()));
+
+        environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME,
+                Map.of(EXCLUDE_PROPERTY, String.join(",", exclusions))));
+    }
+
+    private static boolean usesDatabase(ConfigurableEnvironment environment) {
+        return environment.getProperty("use-sql-repository", Boolean.class, false)
+                || environment.getProperty("use-tiered-repository", Boolean.class, false);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
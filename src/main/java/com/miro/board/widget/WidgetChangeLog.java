@@ -0,0 +1,164 @@
+package com.miro.board.widget;
+
+import com.miro.board.widget.model.Widget;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Ids of the widgets changed by each version of the board, so a client can catch up on what changed
+ * since the version it last read. Every mutation heard makes a new version: a widget created, updated
+ * or deleted, or the widgets whose z-index was shifted. Only the ids are kept, the changes themselves
+ * being read from the board as it is, so each widget is sent once however often it changed.
+ *
+ * The ids are kept in a ring buffer, which grows up to the memory budget and then drops the oldest
+ * ones; a version older than those dropped is no longer covered, and neither is one from before the
+ * board was replaced. Versions start from the startup time in microseconds, so a version handed out
+ * before a restart is older than any kept after it. Not thread-safe: it is only used under the widget
+ * service lock.
+ * */
+class WidgetChangeLog implements WidgetMutationListener {
+
+    // Each change takes its version and the id, negated for a widget created by that version
+    private static final int CHANGE_LENGTH = 2 * Long.BYTES;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxCapacity;
+
+    // Positions only grow, the buffers holding position p at p modulo their length
+    private long[] versions;
+    private long[] ids;
+    private long head;
+    private long end;
+
+    private long version;
+    // The oldest version the changes since are all kept for
+    private long coveredSince;
+
+    WidgetChangeLog(long budgetBytes) {
+        maxCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, budgetBytes / CHANGE_LENGTH));
+        versions = new long[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        ids = new long[versions.length];
+        version = System.currentTimeMillis() * 1000;
+        coveredSince = version;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    // The ids of the widgets changed after the given version, in the order they first changed, each
+    // telling whether the widget was created after it; empty if those changes are no longer all kept
+    Optional<Map<Long, Boolean>> getChangesSince(long since) {
+        if (since < coveredSince || since > version) {
+            return Optional.empty();
+        }
+
+        Map<Long, Boolean> changes = new LinkedHashMap<>();
+
+        for (long position = findFirstAfter(since); position < end; position++) {
+            long id = get(ids, position);
+            changes.putIfAbsent(Math.abs(id), id < 0);
+        }
+
+        return Optional.of(changes);
+    }
+
+    @Override
+    public void onSaved(Widget previous, Widget saved) {
+        version++;
+        append(previous == null ? -saved.getId() : saved.getId());
+    }
+
+    @Override
+    public void onDeleted(Widget deleted) {
+        version++;
+        append(deleted.getId());
+    }
+
+    @Override
+    public void onZIndexIncreased(List<Long> ids) {
+        appendAll(ids);
+    }
+
+    @Override
+    public void onZIndexDecreased(List<Long> ids) {
+        appendAll(ids);
+    }
+
+    // Nothing from before the board was replaced can be caught up on
+    @Override
+    public void onReset() {
+        version++;
+        coveredSince = version;
+        versions = new long[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        ids = new long[versions.length];
+        head = 0;
+        end = 0;
+    }
+
+    private void appendAll(List<Long> changedIds) {
+        version++;
+        for (Long id : changedIds) {
+            append(id);
+        }
+    }
+
+    private void append(long id) {
+        if (end - head == versions.length) {
+            if (versions.length < maxCapacity) {
+                grow();
+            } else {
+                // Clients that read the version dropped have seen its changes, not those of the next one
+                coveredSince = Math.max(coveredSince, get(versions, head));
+                head++;
+            }
+        }
+
+        set(versions, end, version);
+        set(ids, end, id);
+        end++;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(maxCapacity, 2L * versions.length);
+        long[] grownVersions = new long[capacity];
+        long[] grownIds = new long[capacity];
+
+        for (long position = head; position < end; position++) {
+            grownVersions[(int) (position % capacity)] = get(versions, position);
+            grownIds[(int) (position % capacity)] = get(ids, position);
+        }
+
+        versions = grownVersions;
+        ids = grownIds;
+    }
+
+    // Versions only grow along the buffer, so the first change after a version is found by binary search
+    private long findFirstAfter(long since) {
+        long low = head;
+        long high = end;
+
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+
+            if (get(versions, middle) <= since) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static long get(long[] buffer, long position) {
+        return buffer[(int) (position % buffer.length)];
+    }
+
+    private static void set(long[] buffer, long position, long value) {
+        buffer[(int) (position % buffer.length)] = value;
+    }
+}
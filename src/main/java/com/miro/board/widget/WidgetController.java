@@ -1,57 +1,222 @@
 package com.miro.board.widget;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.board.exception.BoardVersionNotFoundException;
+import com.miro.board.exception.InvalidHistoryStepsException;
+import com.miro.board.exception.InvalidImportException;
 import com.miro.board.exception.InvalidPageSizeException;
+import com.miro.board.exception.InvalidParentException;
+import com.miro.board.exception.InvalidSortException;
+import com.miro.board.exception.InvalidZRangeException;
 import com.miro.board.exception.WidgetNotFoundException;
+import com.miro.board.widget.WidgetReadCoalescer.SerializedPage;
+import com.miro.board.widget.model.HitTestRequest;
 import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetChanges;
+import com.miro.board.widget.model.WidgetHistory;
+import com.miro.board.widget.model.WidgetMoveRequest;
 import com.miro.board.widget.model.WidgetRequest;
+import com.miro.board.widget.model.WidgetScaleRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.data.web.SortDefault;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping(value = "/widgets")
 public class WidgetController {
 
-    private static final int MAX_PAGE_SIZE = 500;
+    public static final String BOARD_VERSION_HEADER = "X-Board-Version";
+
+    public static final String NDJSON = "application/x-ndjson";
 
     private final WidgetService widgetService;
+    private final WidgetReadCoalescer widgetReadCoalescer;
+    private final ObjectMapper objectMapper;
 
-    public WidgetController(WidgetService widgetService) {
+    public WidgetController(WidgetService widgetService, WidgetReadCoalescer widgetReadCoalescer, ObjectMapper objectMapper) {
         this.widgetService = widgetService;
+        this.widgetReadCoalescer = widgetReadCoalescer;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public Widget createWidget(@Valid @RequestBody WidgetRequest request) {
+    public Widget createWidget(@Valid @RequestBody WidgetRequest request) throws InvalidParentException {
         return widgetService.create(request);
     }
 
+    @PostMapping("move")
+    public List<Widget> move(@Valid @RequestBody WidgetMoveRequest request) throws WidgetNotFoundException {
+        return widgetService.move(request);
+    }
+
+    @PostMapping("scale")
+    public List<Widget> scale(@Valid @RequestBody WidgetScaleRequest request) throws WidgetNotFoundException {
+        return widgetService.scale(request);
+    }
+
+    // One widget per line, in z order, streamed as it is read from the board
+    @GetMapping(value = "export", produces = NDJSON)
+    public void exportAll(HttpServletResponse response) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Widget.class);
+        response.setContentType(NDJSON);
+
+        try (OutputStream output = new BufferedOutputStream(response.getOutputStream())) {
+            widgetService.exportAll(widget -> {
+                output.write(writer.writeValueAsBytes(widget));
+                output.write('\n');
+            });
+        }
+    }
+
+    // Replaces the board with the widgets of an export, one per line and sorted by z-index
+    @PostMapping(value = "import", consumes = NDJSON)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void importAll(InputStream body) throws IOException, InvalidImportException {
+        try (MappingIterator<Widget> widgets = objectMapper.readerFor(Widget.class).readValues(body)) {
+            widgetService.importAll(() -> widgets.hasNextValue() ? widgets.nextValue() : null);
+        } catch (JsonProcessingException e) {
+            throw new InvalidImportException(e.getLocation() == null ? 0 : e.getLocation().getLineNr(), e.getOriginalMessage());
+        }
+    }
+
+    // Undoes the latest operations, most recent first, including the z-index shifts they caused
+    @PostMapping("undo")
+    public WidgetHistory undo(@RequestParam(defaultValue = "1") int steps) throws InvalidHistoryStepsException {
+        return widgetService.undo(steps);
+    }
+
+    @PostMapping("redo")
+    public WidgetHistory redo(@RequestParam(defaultValue = "1") int steps) throws InvalidHistoryStepsException {
+        return widgetService.redo(steps);
+    }
+
+    @GetMapping("history")
+    public WidgetHistory getHistory() {
+        return widgetService.getHistory();
+    }
+
     @PutMapping("{id}")
-    public Widget update(@PathVariable Long id, @Valid @RequestBody WidgetRequest request) throws WidgetNotFoundException {
+    public Widget update(@PathVariable Long id, @Valid @RequestBody WidgetRequest request)
+            throws WidgetNotFoundException, InvalidParentException {
         return widgetService.update(id, request);
     }
 
+    @PostMapping("{id}/front")
+    public Widget moveToFront(@PathVariable Long id) throws WidgetNotFoundException {
+        return widgetService.moveToFront(id);
+    }
+
+    @PostMapping("{id}/back")
+    public Widget moveToBack(@PathVariable Long id) throws WidgetNotFoundException {
+        return widgetService.moveToBack(id);
+    }
+
+    @PostMapping("{id}/above/{otherId}")
+    public Widget moveAbove(@PathVariable Long id, @PathVariable Long otherId) throws WidgetNotFoundException, InvalidParentException {
+        return widgetService.moveAbove(id, otherId);
+    }
+
+    @PostMapping("{id}/below/{otherId}")
+    public Widget moveBelow(@PathVariable Long id, @PathVariable Long otherId) throws WidgetNotFoundException, InvalidParentException {
+        return widgetService.moveBelow(id, otherId);
+    }
+
     @DeleteMapping("{id}")
     public Widget delete(@PathVariable Long id) throws WidgetNotFoundException {
         return widgetService.delete(id);
     }
 
+    // Concurrent identical reads share a single read and serialization
     @GetMapping("{id}")
-    public Widget get(@PathVariable Long id) throws WidgetNotFoundException {
-        return widgetService.get(id);
+    public ResponseEntity<byte[]> get(@PathVariable Long id) throws WidgetNotFoundException {
+        byte[] widget = widgetReadCoalescer.get(id).join().orElseThrow(WidgetNotFoundException::new);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(widget);
+    }
+
+    @GetMapping("at")
+    public Widget getAt(@RequestParam int x, @RequestParam int y) throws WidgetNotFoundException {
+        return widgetService.getAt(x, y);
+    }
+
+    @PostMapping("at")
+    public List<Widget> getAt(@Valid @RequestBody HitTestRequest request) {
+        return widgetService.getAt(request.getPoints());
+    }
+
+    // Number of widgets whose z-index is within [zFrom, zTo]; either bound can be left out, so
+    // zTo alone counts the widgets up to a layer
+    @GetMapping("count")
+    public long count(@RequestParam(required = false) Integer zFrom, @RequestParam(required = false) Integer zTo)
+            throws InvalidZRangeException {
+        return widgetService.countInZRange(lowerZBound(zFrom), upperZBound(zTo));
+    }
+
+    // The board as it is drawn, each top-level widget followed by the widgets of its frame at their position on the board
+    @GetMapping("stacked")
+    public Page<Widget> getAllStacked(@PageableDefault Pageable pageable) throws InvalidPageSizeException {
+        return widgetService.getAllInStackingOrder(pageable);
+    }
+
+    // What changed since the version read last, each changed widget once and each deleted one by its id.
+    // Without a version, or when it is too old to catch up from, the whole board is returned to resync from.
+    @GetMapping("changes")
+    public WidgetChanges getChanges(@RequestParam(required = false) Long since) {
+        return widgetService.getChanges(since);
     }
 
+    // The board version read is returned in a header; passing it back reads the next pages from the same version.
+    // Passing zFrom or zTo instead pages through the widgets within that z range of the current board.
     @GetMapping
-    public Page<Widget> getAll(@SortDefault(sort = "z") @PageableDefault Pageable pageable) throws InvalidPageSizeException {
-        if (pageable.getPageSize() > MAX_PAGE_SIZE) {
-            throw new InvalidPageSizeException(MAX_PAGE_SIZE);
+    public ResponseEntity<byte[]> getAll(@SortDefault(sort = "z") @PageableDefault Pageable pageable,
+                                         @RequestParam(required = false) Long version,
+                                         @RequestParam(required = false) Integer zFrom,
+                                         @RequestParam(required = false) Integer zTo)
+            throws InvalidPageSizeException, InvalidSortException, BoardVersionNotFoundException, InvalidZRangeException,
+            JsonProcessingException {
+        if (zFrom != null || zTo != null) {
+            if (version != null) {
+                throw new InvalidZRangeException("A z range is read from the current board and cannot be read at a version");
+            }
+
+            Page<Widget> page = widgetService.getAllInZRange(lowerZBound(zFrom), upperZBound(zTo), pageable);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(objectMapper.writeValueAsBytes(page));
         }
 
-        return widgetService.getAll(pageable);
+        SerializedPage page = widgetReadCoalescer.getAll(pageable, version);
+        byte[] body = page.getBody().join().orElseThrow(() -> new BoardVersionNotFoundException(page.getVersion()));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+
+        if (page.getVersion() != null) {
+            response.header(BOARD_VERSION_HEADER, String.valueOf(page.getVersion()));
+        }
+
+        return response.body(body);
+    }
+
+    private static int lowerZBound(Integer zFrom) {
+        return zFrom == null ? Integer.MIN_VALUE : zFrom;
+    }
+
+    private static int upperZBound(Integer zTo) {
+        return zTo == null ? Integer.MAX_VALUE : zTo;
     }
 }
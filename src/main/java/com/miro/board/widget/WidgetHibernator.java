@@ -0,0 +1,128 @@
+package com.miro.board.widget;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hibernates the in-memory board once it has been neither read nor written for the idle period:
+ * the board is written to a compressed file and released from the heap, and the next request loads
+ * it back. Idleness is polled a few times per period, so a board hibernates within a quarter of the
+ * period after it went idle, and a busy board costs a flag check per access.
+ * */
+@Component
+@ConditionalOnExpression("${hibernation.idle-ms:0} > 0")
+// Eager under lazy initialization, as nothing else refers to it
+@Lazy(false)
+public class WidgetHibernator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WidgetHibernator.class);
+
+    private static final String FILE_NAME = "board.hibernated";
+
+    private final WidgetService widgetService;
+    private final Path file;
+    private final long idleMillis;
+    private final Timer hibernateTimer;
+    private final Timer wakeTimer;
+
+    // Only touched by the checker thread
+    private long lastAccessMillis;
+
+    private ScheduledExecutorService checker;
+
+    public WidgetHibernator(WidgetService widgetService,
+                            MeterRegistry meterRegistry,
+                            @Value("${hibernation.idle-ms}") long idleMillis,
+                            @Value("${hibernation.directory}") String directory) {
+        this.widgetService = widgetService;
+        this.file = Paths.get(directory).resolve(FILE_NAME).toAbsolutePath();
+        this.idleMillis = idleMillis;
+
+        hibernateTimer = Timer.builder("board.hibernation.hibernate")
+                .description("Time spent writing the idle board to its file")
+                .register(meterRegistry);
+        wakeTimer = Timer.builder("board.hibernation.wake")
+                .description("Time spent loading the hibernated board back on its next access")
+                .register(meterRegistry);
+        Gauge.builder("board.hibernation.hibernating", widgetService, service -> service.isHibernating() ? 1 : 0)
+                .description("Whether the board is hibernating")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!widgetService.isServedFromMemory()) {
+            LOG.info("The board is not served from memory and never hibernates");
+            return;
+        }
+
+        lastAccessMillis = System.currentTimeMillis();
+        long checkIntervalMillis = Math.max(1, idleMillis / 4);
+
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "board-hibernator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkSafely, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    // Hibernates the board if it has not been accessed for the idle period, returning whether it did
+    boolean check() throws IOException {
+        long now = System.currentTimeMillis();
+
+        if (widgetService.pollAccessed()) {
+            lastAccessMillis = now;
+            return false;
+        }
+
+        if (now - lastAccessMillis < idleMillis || widgetService.isHibernating()) {
+            return false;
+        }
+
+        Files.createDirectories(file.getParent());
+
+        long start = System.nanoTime();
+        boolean hibernated = widgetService.hibernate(file, wakeTimer);
+
+        if (hibernated) {
+            hibernateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            LOG.info("Hibernated the board to {} after {} ms idle", file, now - lastAccessMillis);
+        }
+
+        return hibernated;
+    }
+
+    // A failure must not stop the checks; the board just stays in memory until the next one
+    private void checkSafely() {
+        try {
+            check();
+        } catch (Exception e) {
+            LOG.warn("Could not hibernate the board", e);
+        }
+    }
+}
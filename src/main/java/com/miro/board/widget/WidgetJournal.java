@@ -0,0 +1,386 @@
+package com.miro.board.widget;
+
+import com.miro.board.widget.model.Widget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Undo and redo history of the board. Every operation is recorded as the changes it made, in the
+ * order it made them: widgets created, updated and deleted, and the z-index shifts that made room
+ * for them. Undoing an operation applies the inverse of its changes in reverse order and redoing it
+ * applies them again, so either costs the changes of the operations involved and nothing else.
+ *
+ * The changes are encoded as longs in a ring buffer, which grows up to the memory budget and then
+ * drops the oldest operations to make room for new ones. An operation that does not fit in the budget
+ * clears the history, since nothing before it could be undone either. Each operation is framed by
+ * its length on both ends so the buffer can be walked in both directions; each change starts with
+ * its kind and the length of what follows, a widget taking five longs: its id, its size, its
+ * position, its z-index and the id of its frame, 0 for a top-level widget.
+ *
+ * Only changes made between begin and commit are recorded, so those made by undo, redo and
+ * replication are not, and replacing the board clears the history. Not thread-safe: it is only
+ * used under the widget service lock.
+ * */
+class WidgetJournal implements WidgetMutationListener {
+
+    private static final int CREATED = 1;
+    private static final int UPDATED = 2;
+    private static final int DELETED = 3;
+    private static final int Z_INDEX_INCREASED = 4;
+
+    private static final int WIDGET_LENGTH = 5;
+    // Ids are positive, so no frame is recorded as 0
+    private static final long NO_PARENT = 0;
+    // The length of an operation, on both ends
+    private static final int FRAME_LENGTH = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxCapacity;
+
+    // Positions only grow, the buffer holding position p at p modulo its length.
+    // Operations from head to cursor can be undone, those from cursor to end redone.
+    private long[] ring;
+    private long head;
+    private long cursor;
+    private long end;
+    private int undoable;
+    private int redoable;
+
+    // Changes of the operation in progress, copied to the ring buffer once it completes
+    private long[] pending = new long[INITIAL_CAPACITY];
+    private int pendingLength;
+    private boolean recording;
+    private boolean overflowed;
+
+    // Positions of the changes of the operation being undone, reused across operations
+    private long[] changes = new long[INITIAL_CAPACITY];
+
+    WidgetJournal(long budgetBytes) {
+        maxCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, budgetBytes / Long.BYTES));
+        ring = new long[Math.min(INITIAL_CAPACITY, maxCapacity)];
+    }
+
+    void begin() {
+        recording = true;
+        overflowed = false;
+        pendingLength = 0;
+    }
+
+    // Records the operation in progress, forgetting the operations undone before it
+    void commit() {
+        recording = false;
+
+        if (overflowed) {
+            clear();
+        } else if (pendingLength > 0) {
+            append();
+        }
+
+        trimPending();
+    }
+
+    // Forgets the operation in progress, which failed
+    void discard() {
+        recording = false;
+        trimPending();
+    }
+
+    // Undoes up to the given number of operations, the most recent first, returning how many were undone
+    int undo(int steps, Replay replay) {
+        int undone = 0;
+
+        for (; undone < steps && undoable > 0; undone++) {
+            long operationEnd = cursor;
+            long operationStart = operationEnd - get(operationEnd - 1);
+            int count = findChanges(operationStart + 1, operationEnd - 1);
+
+            for (int i = count - 1; i >= 0; i--) {
+                undoChange(changes[i], replay);
+            }
+
+            cursor = operationStart;
+            undoable--;
+            redoable++;
+        }
+
+        if (changes.length > INITIAL_CAPACITY) {
+            changes = new long[INITIAL_CAPACITY];
+        }
+
+        return undone;
+    }
+
+    // Redoes up to the given number of operations, the least recent first, returning how many were redone
+    int redo(int steps, Replay replay) {
+        int redone = 0;
+
+        for (; redone < steps && redoable > 0; redone++) {
+            long operationStart = cursor;
+            long operationEnd = operationStart + get(operationStart);
+
+            for (long position = operationStart + 1; position < operationEnd - 1; position += 1 + changeLength(position)) {
+                redoChange(position, replay);
+            }
+
+            cursor = operationEnd;
+            undoable++;
+            redoable--;
+        }
+
+        return redone;
+    }
+
+    int getUndoable() {
+        return undoable;
+    }
+
+    int getRedoable() {
+        return redoable;
+    }
+
+    long getSizeInBytes() {
+        return (long) ring.length * Long.BYTES;
+    }
+
+    @Override
+    public void onSaved(Widget previous, Widget saved) {
+        if (previous == null) {
+            if (reserve(CREATED, WIDGET_LENGTH)) {
+                putWidget(saved);
+            }
+        } else if (reserve(UPDATED, 2 * WIDGET_LENGTH)) {
+            putWidget(previous);
+            putWidget(saved);
+        }
+    }
+
+    @Override
+    public void onDeleted(Widget deleted) {
+        if (reserve(DELETED, WIDGET_LENGTH)) {
+            putWidget(deleted);
+        }
+    }
+
+    @Override
+    public void onZIndexIncreased(List<Long> ids) {
+        if (reserve(Z_INDEX_INCREASED, ids.size())) {
+            for (Long id : ids) {
+                pending[pendingLength++] = id;
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    private void undoChange(long position, Replay replay) {
+        long header = get(position);
+
+        switch (kind(header)) {
+            case CREATED:
+                replay.remove(get(position + 1));
+                break;
+            case UPDATED:
+            case DELETED:
+                replay.put(getWidget(position + 1));
+                break;
+            case Z_INDEX_INCREASED:
+                replay.decreaseZIndex(getIds(position + 1, length(header)));
+                break;
+            default:
+                throw new IllegalStateException("Unknown change " + kind(header));
+        }
+    }
+
+    private void redoChange(long position, Replay replay) {
+        long header = get(position);
+
+        switch (kind(header)) {
+            case CREATED:
+                replay.put(getWidget(position + 1));
+                break;
+            case UPDATED:
+                replay.put(getWidget(position + 1 + WIDGET_LENGTH));
+                break;
+            case DELETED:
+                replay.remove(get(position + 1));
+                break;
+            case Z_INDEX_INCREASED:
+                replay.increaseZIndex(getIds(position + 1, length(header)));
+                break;
+            default:
+                throw new IllegalStateException("Unknown change " + kind(header));
+        }
+    }
+
+    // Collects the positions of the changes from start to end, returning how many there are
+    private int findChanges(long start, long end) {
+        int count = 0;
+
+        for (long position = start; position < end; position += 1 + changeLength(position)) {
+            if (count == changes.length) {
+                changes = Arrays.copyOf(changes, count * 2);
+            }
+            changes[count++] = position;
+        }
+
+        return count;
+    }
+
+    // Makes room for a change of the given length in the operation in progress. False if nothing
+    // is being recorded, or if the operation no longer fits in the budget.
+    private boolean reserve(int kind, int length) {
+        if (!recording || overflowed) {
+            return false;
+        }
+
+        long required = (long) pendingLength + 1 + length;
+        if (required + FRAME_LENGTH > maxCapacity) {
+            overflowed = true;
+            return false;
+        }
+
+        if (required > pending.length) {
+            pending = Arrays.copyOf(pending, (int) Math.min(maxCapacity, Math.max(required, 2L * pending.length)));
+        }
+
+        pending[pendingLength++] = (long) kind << 32 | length;
+        return true;
+    }
+
+    private void putWidget(Widget widget) {
+        pending[pendingLength++] = widget.getId();
+        pending[pendingLength++] = pack(widget.getWidth(), widget.getHeight());
+        pending[pendingLength++] = pack(widget.getX(), widget.getY());
+        pending[pendingLength++] = widget.getZ();
+        pending[pendingLength++] = widget.getParentId() == null ? NO_PARENT : widget.getParentId();
+    }
+
+    private void append() {
+        int length = pendingLength + FRAME_LENGTH;
+
+        // The operations undone can no longer be redone
+        end = cursor;
+        redoable = 0;
+
+        while (cursor - head + length > ring.length) {
+            if (ring.length < maxCapacity) {
+                grow(cursor - head + length);
+            } else {
+                head += get(head);
+                undoable--;
+            }
+        }
+
+        set(cursor, length);
+        for (int i = 0; i < pendingLength; i++) {
+            set(cursor + 1 + i, pending[i]);
+        }
+        set(cursor + length - 1, length);
+
+        cursor += length;
+        end = cursor;
+        undoable++;
+    }
+
+    private void grow(long required) {
+        long[] grown = new long[(int) Math.min(maxCapacity, Math.max(required, 2L * ring.length))];
+
+        for (long position = head; position < end; position++) {
+            grown[(int) (position % grown.length)] = get(position);
+        }
+
+        ring = grown;
+    }
+
+    private void clear() {
+        ring = new long[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        head = 0;
+        cursor = 0;
+        end = 0;
+        undoable = 0;
+        redoable = 0;
+    }
+
+    // A large operation is not worth keeping room for
+    private void trimPending() {
+        if (pending.length > INITIAL_CAPACITY) {
+            pending = new long[INITIAL_CAPACITY];
+        }
+        pendingLength = 0;
+    }
+
+    private long get(long position) {
+        return ring[(int) (position % ring.length)];
+    }
+
+    private void set(long position, long value) {
+        ring[(int) (position % ring.length)] = value;
+    }
+
+    private int changeLength(long position) {
+        return length(get(position));
+    }
+
+    private Widget getWidget(long position) {
+        long size = get(position + 1);
+        long coordinates = get(position + 2);
+        long parentId = get(position + 4);
+
+        return Widget.builder()
+                .id(get(position))
+                .width(high(size))
+                .height(low(size))
+                .x(high(coordinates))
+                .y(low(coordinates))
+                .z((int) get(position + 3))
+                .parentId(parentId == NO_PARENT ? null : parentId)
+                .build();
+    }
+
+    private List<Long> getIds(long position, int count) {
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(get(position + i));
+        }
+        return ids;
+    }
+
+    private static int kind(long header) {
+        return high(header);
+    }
+
+    private static int length(long header) {
+        return low(header);
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+
+    private static int high(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int low(long value) {
+        return (int) value;
+    }
+
+    /**
+     * Applies the changes undone or redone to the board. Widgets are put with the id they were
+     * recorded with, whether a widget with that id exists or not.
+     * */
+    interface Replay {
+        void put(Widget widget);
+
+        void remove(long id);
+
+        void increaseZIndex(List<Long> ids);
+
+        void decreaseZIndex(List<Long> ids);
+    }
+}
@@ -0,0 +1,32 @@
+package com.miro.board.widget;
+
+import com.miro.board.widget.model.Widget;
+
+import java.util.List;
+
+/**
+ * Receives the mutations applied by {@link WidgetService}, in the order they are applied. Calls are
+ * made while the service holds its write lock, so listeners must be fast and must not call back
+ * into the service's write operations.
+ * */
+public interface WidgetMutationListener {
+
+    // previous is null when the widget was created
+    default void onSaved(Widget previous, Widget saved) {
+    }
+
+    default void onDeleted(Widget deleted) {
+    }
+
+    // The z-index of every widget was increased by one to make room for another widget
+    default void onZIndexIncreased(List<Long> ids) {
+    }
+
+    // The z-index of every widget was decreased by one, undoing an increase
+    default void onZIndexDecreased(List<Long> ids) {
+    }
+
+    // The whole board was replaced
+    default void onReset() {
+    }
+}
@@ -0,0 +1,124 @@
+package com.miro.board.widget;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miro.board.exception.InvalidPageSizeException;
+import com.miro.board.exception.InvalidSortException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight reads: identical reads of the same version of the board arriving while one of them
+ * is being served share its result, read and serialized to JSON once. The first caller reads the
+ * board on its own thread; the others get the same future, so the reactive stack can wait for it
+ * without blocking.
+ *
+ * A version of the in-memory board never changes, so a shared result is exactly what each of the
+ * callers would have read. The SQL board has no versions and its reads are not coalesced. Nothing is
+ * kept once a read completes, so this only flattens bursts of concurrent reads.
+ * */
+@Service
+public class WidgetReadCoalescer {
+
+    private final WidgetService widgetService;
+    private final ObjectMapper objectMapper;
+    private final Counter coalescedReads;
+
+    // Keyed by WidgetRead or PageRead, each of them completing with a serialized body or nothing
+    private final Map<Object, CompletableFuture<Optional<byte[]>>> inFlight = new ConcurrentHashMap<>();
+
+    public WidgetReadCoalescer(WidgetService widgetService, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.widgetService = widgetService;
+        this.objectMapper = objectMapper;
+        coalescedReads = Counter.builder("board.reads.coalesced")
+                .description("Reads served with the result of an identical read in progress")
+                .register(meterRegistry);
+    }
+
+    // The widget serialized to JSON, or nothing if there is no widget with this id
+    public CompletableFuture<Optional<byte[]>> get(Long id) {
+        OptionalLong version = widgetService.getCurrentVersion();
+
+        if (version.isEmpty()) {
+            return CompletableFuture.completedFuture(widgetService.find(id).map(this::serialize));
+        }
+
+        // A version only gets newer, so the widget read is at least as recent as the version keyed with
+        return coalesce(new WidgetRead(version.getAsLong(), id), () -> widgetService.find(id).map(this::serialize));
+    }
+
+    // A page of the board at the given version, or at the current version if there is none, serialized to JSON.
+    // The body is empty if the version is no longer available.
+    public SerializedPage getAll(Pageable pageable, Long version) throws InvalidPageSizeException, InvalidSortException {
+        widgetService.validatePageable(pageable);
+
+        OptionalLong versionToRead = version == null ? widgetService.retainCurrentVersion() : OptionalLong.of(version);
+
+        if (versionToRead.isEmpty()) {
+            return new SerializedPage(CompletableFuture.completedFuture(Optional.of(serialize(widgetService.getAll(pageable)))), null);
+        }
+
+        long pageVersion = versionToRead.getAsLong();
+        CompletableFuture<Optional<byte[]>> body = coalesce(new PageRead(pageVersion, pageable),
+                () -> widgetService.getAllAtVersion(pageable, pageVersion).map(this::serialize));
+
+        return new SerializedPage(body, pageVersion);
+    }
+
+    private CompletableFuture<Optional<byte[]>> coalesce(Object read, Supplier<Optional<byte[]>> reader) {
+        CompletableFuture<Optional<byte[]>> result = new CompletableFuture<>();
+        CompletableFuture<Optional<byte[]>> readInProgress = inFlight.putIfAbsent(read, result);
+
+        if (readInProgress != null) {
+            coalescedReads.increment();
+            return readInProgress;
+        }
+
+        try {
+            result.complete(reader.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        } finally {
+            inFlight.remove(read, result);
+        }
+
+        return result;
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Value
+    public static class SerializedPage {
+        CompletableFuture<Optional<byte[]>> body;
+        Long version;
+    }
+
+    @Value
+    private static class WidgetRead {
+        long version;
+        Long id;
+    }
+
+    @Value
+    private static class PageRead {
+        long version;
+        Pageable pageable;
+    }
+}
@@ -1,95 +1,921 @@
 package com.miro.board.widget;
 
+import com.miro.board.exception.BoardVersionNotFoundException;
+import com.miro.board.exception.InvalidHistoryStepsException;
+import com.miro.board.exception.InvalidImportException;
+import com.miro.board.exception.InvalidPageSizeException;
+import com.miro.board.exception.InvalidParentException;
+import com.miro.board.exception.InvalidSortException;
+import com.miro.board.exception.InvalidZRangeException;
 import com.miro.board.exception.WidgetNotFoundException;
+import com.miro.board.profiling.WidgetLockEvent;
+import com.miro.board.profiling.ZIndexCascadeEvent;
+import com.miro.board.widget.model.Area;
+import com.miro.board.widget.model.Point;
+import com.miro.board.widget.model.VersionedPage;
 import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetChanges;
+import com.miro.board.widget.model.WidgetHistory;
+import com.miro.board.widget.model.WidgetMoveRequest;
 import com.miro.board.widget.model.WidgetRequest;
+import com.miro.board.widget.model.WidgetScaleRequest;
+import com.miro.board.widget.model.WidgetSelectionRequest;
+import com.miro.board.widget.model.WidgetSortField;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
 import com.miro.board.widget.repository.WidgetRepository;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.transaction.Transactional;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 public class WidgetService {
 
+    public static final int MAX_PAGE_SIZE = 500;
+
     private static final Logger LOG = LoggerFactory.getLogger(WidgetService.class);
 
+    // Order of an import: top-level widgets first, then the widgets of each frame, each group by z-index
+    private static final Comparator<Widget> IMPORT_ORDER = Comparator.comparing(Widget::getParentId,
+            Comparator.nullsFirst(Comparator.<Long>naturalOrder())).thenComparingInt(Widget::getZ);
+
     private final WidgetRepository widgetRepository;
+    private final TransactionOperations transactionOperations;
+    private final List<WidgetMutationListener> mutationListeners = new CopyOnWriteArrayList<>();
+    private final WidgetJournal journal;
+    private final WidgetJournal.Replay journalReplay = new JournalReplay();
+    private final WidgetChangeLog changeLog;
+
+    @Autowired
+    public WidgetService(ApplicationContext context,
+                         @Value("${use-sql-repository}") boolean suseSQLRepository,
+                         @Value("${use-tiered-repository}") boolean useTieredRepository,
+                         @Value("${undo.history-budget-bytes}") long undoBudgetBytes,
+                         @Value("${sync.change-log-budget-bytes}") long changeLogBudgetBytes) {
+        if (useTieredRepository) {
+            LOG.info("Using in-memory repository backed by SQL");
+            widgetRepository = (WidgetRepository) context.getBean("TieredRepository");
+        } else {
+            LOG.info("Using {} repository", suseSQLRepository ? "SQL" : "in-memory");
+            widgetRepository = (WidgetRepository) context.getBean(suseSQLRepository ? "SQLRepository" : "InMemoryRepository");
+        }
+
+        // The in-memory and tiered repositories write to memory only
+        transactionOperations = suseSQLRepository && !useTieredRepository
+                ? new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                : TransactionOperations.withoutTransaction();
+
+        // Registered first, so an operation is recorded before any other listener hears of it
+        journal = new WidgetJournal(undoBudgetBytes);
+        mutationListeners.add(journal);
+        changeLog = new WidgetChangeLog(changeLogBudgetBytes);
+        mutationListeners.add(changeLog);
+    }
+
+    // Whether reads are served from immutable in-memory snapshots, which never block
+    public boolean isServedFromMemory() {
+        return widgetRepository instanceof WidgetInMemoryRepository;
+    }
+
+    public void addMutationListener(WidgetMutationListener listener) {
+        mutationListeners.add(listener);
+    }
+
+    // A widget placed in a frame takes its z-index among the widgets of the frame
+    public Widget create(WidgetRequest request) throws InvalidParentException {
+        return withUndoableWriteLock("create", () -> {
+            validateParent(request.getParentId(), null);
+            Widget widget = convertRequestToWidget(request, getZIndex(request));
+            recalculateZIndexes(widget.getParentId(), widget.getZ(), null);
+            widget.setLastModified(now());
+
+            Widget savedWidget = widgetRepository.save(widget);
+            mutationListeners.forEach(listener -> listener.onSaved(null, savedWidget));
+            return savedWidget;
+        });
+    }
+
+    // Operations failing in two ways tell a missing widget by an empty result, as the lock carries a
+    // single checked exception type
+
+    public Widget update(Long id, WidgetRequest request) throws WidgetNotFoundException, InvalidParentException {
+        return withUndoableWriteLock("update", () -> {
+            Optional<Widget> previousWidget = widgetRepository.findById(id);
+            if (previousWidget.isEmpty()) {
+                return Optional.<Widget>empty();
+            }
+
+            validateParent(request.getParentId(), id);
+            Widget updatedWidget = convertRequestToWidget(request, getZIndex(request));
+            recalculateZIndexes(updatedWidget.getParentId(), updatedWidget.getZ(), id);
+
+            updatedWidget.setId(id);
+            updatedWidget.setLastModified(now());
+
+            Widget savedWidget = widgetRepository.save(updatedWidget);
+            mutationListeners.forEach(listener -> listener.onSaved(previousWidget.get(), savedWidget));
+            return Optional.of(savedWidget);
+        }).orElseThrow(WidgetNotFoundException::new);
+    }
+
+    // The widgets of a frame are deleted with it, and put back with it by an undo
+    public Widget delete(Long id) throws WidgetNotFoundException {
+        return withUndoableWriteLock("delete", () -> {
+            Widget widgetToDelete = widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
+
+            for (Widget child : widgetRepository.findAllByParentIdOrderByZ(id)) {
+                widgetRepository.delete(child);
+                mutationListeners.forEach(listener -> listener.onDeleted(child));
+            }
+
+            widgetRepository.delete(widgetToDelete);
+            mutationListeners.forEach(listener -> listener.onDeleted(widgetToDelete));
+            return widgetToDelete;
+        });
+    }
+
+    // Layer operations take the free z-index next to the target when there is one, so only a packed
+    // board shifts the run of widgets in the way. They are scoped to the widgets of the same frame, or
+    // to the top-level widgets, so restacking a frame leaves its widgets untouched.
+
+    public Widget moveToFront(Long id) throws WidgetNotFoundException {
+        return withUndoableWriteLock("moveToFront", () -> {
+            Widget widget = widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
+            int maxZIndex = widgetRepository.getMaxZIndex(widget.getParentId());
+
+            return widget.getZ() == maxZIndex ? widget : moveTo(widget, maxZIndex + 1);
+        });
+    }
+
+    public Widget moveToBack(Long id) throws WidgetNotFoundException {
+        return withUndoableWriteLock("moveToBack", () -> {
+            Widget widget = widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
+            int minZIndex = widgetRepository.getMinZIndex(widget.getParentId());
+
+            return widget.getZ() == minZIndex ? widget : moveTo(widget, minZIndex - 1);
+        });
+    }
+
+    // Moves the widget right above the other one, which must be in the same frame
+    public Widget moveAbove(Long id, Long otherId) throws WidgetNotFoundException, InvalidParentException {
+        return withUndoableWriteLock("moveAbove", () -> {
+            Optional<Widget> widget = widgetRepository.findById(id);
+            Optional<Widget> other = widgetRepository.findById(otherId);
+
+            return widget.isEmpty() || other.isEmpty() ? Optional.<Widget>empty() : Optional.of(moveAbove(widget.get(), other.get()));
+        }).orElseThrow(WidgetNotFoundException::new);
+    }
+
+    // Moves the widget right below the other one, which must be in the same frame
+    public Widget moveBelow(Long id, Long otherId) throws WidgetNotFoundException, InvalidParentException {
+        return withUndoableWriteLock("moveBelow", () -> {
+            Optional<Widget> widget = widgetRepository.findById(id);
+            Optional<Widget> other = widgetRepository.findById(otherId);
+
+            return widget.isEmpty() || other.isEmpty() ? Optional.<Widget>empty() : Optional.of(moveBelow(widget.get(), other.get()));
+        }).orElseThrow(WidgetNotFoundException::new);
+    }
+
+    // Moves the selected widgets by dx, dy keeping their z-indexes. A frame carries its widgets along
+    // without them being written, as they are positioned relative to it, selected or not.
+    public List<Widget> move(WidgetMoveRequest request) throws WidgetNotFoundException {
+        return withUndoableWriteLock("move", () -> transform(select(request), widget -> copyOf(widget)
+                .x(widget.getX() + request.getDx())
+                .y(widget.getY() + request.getDy())
+                .build()));
+    }
+
+    // Scales the positions of the selected widgets relative to the origin, and their sizes, keeping their
+    // z-indexes. A frame is scaled with its widgets, whose positions within it and sizes are scaled by the
+    // same factors so they keep their place in it; they are written and returned too. A widget selected
+    // without its frame is scaled relative to the origin on the board, its frame staying as it is.
+    public List<Widget> scale(WidgetScaleRequest request) throws WidgetNotFoundException {
+        return withUndoableWriteLock("scale", () -> {
+            List<Widget> selectedWidgets = select(request);
+            List<Widget> widgets = new ArrayList<>(selectedWidgets);
+            Map<Long, Widget> frames = new HashMap<>();
+
+            for (Widget widget : selectedWidgets) {
+                if (widget.getParentId() == null) {
+                    widgets.addAll(widgetRepository.findAllByParentIdOrderByZ(widget.getId()));
+                } else {
+                    frames.computeIfAbsent(widget.getParentId(), parentId -> widgetRepository.findById(parentId).orElseThrow());
+                }
+            }
+
+            Set<Long> selectedIds = selectedWidgets.stream().map(Widget::getId).collect(Collectors.toSet());
+
+            return transform(widgets, widget -> {
+                if (widget.getParentId() == null) {
+                    return scale(widget, request.getOriginX(), request.getOriginY(), request);
+                }
+
+                // Relative to the frame, whose own origin is the origin of the widgets it carries
+                if (selectedIds.contains(widget.getParentId())) {
+                    return scale(widget, 0, 0, request);
+                }
+
+                Widget frame = frames.get(widget.getParentId());
+                return scale(widget, request.getOriginX() - frame.getX(), request.getOriginY() - frame.getY(), request);
+            });
+        });
+    }
+
+    // Undoes up to the given number of the latest operations, including the z-index shifts they caused
+    public WidgetHistory undo(int steps) throws InvalidHistoryStepsException {
+        validateSteps(steps);
+        return withWriteLock("undo", () -> getHistory(journal.undo(steps, journalReplay)));
+    }
+
+    // Redoes up to the given number of the operations undone last, unless the board was written since
+    public WidgetHistory redo(int steps) throws InvalidHistoryStepsException {
+        validateSteps(steps);
+        return withWriteLock("redo", () -> getHistory(journal.redo(steps, journalReplay)));
+    }
+
+    public WidgetHistory getHistory() {
+        return withWriteLock("history", () -> getHistory(0));
+    }
+
+    // Replaces the board with the imported widgets, which must come as exported: the top-level widgets
+    // sorted by unique z-index, then the widgets of each frame sorted by z-index unique within the frame.
+    // They must have unique ids and their frames must be top-level widgets of the import. They are
+    // validated in a single pass as they are read, and loaded all at once.
+    public int importAll(WidgetReader reader) throws InvalidImportException, IOException {
+        List<Widget> importedWidgets = new ArrayList<>();
+        LocalDateTime now = now();
+        Widget widget;
+
+        while ((widget = reader.read()) != null) {
+            long line = importedWidgets.size() + 1;
+
+            if (widget.getId() == null || widget.getId() < 1) {
+                throw new InvalidImportException(line, "Id must be positive");
+            }
+
+            if (widget.getWidth() < 1 || widget.getHeight() < 1) {
+                throw new InvalidImportException(line, "Width and height must be positive");
+            }
+
+            if (!importedWidgets.isEmpty() && IMPORT_ORDER.compare(widget, importedWidgets.get(importedWidgets.size() - 1)) <= 0) {
+                throw new InvalidImportException(line, "Widgets must be sorted by frame, top-level widgets first, then by z-index, "
+                        + "and z-indexes must be unique within a frame");
+            }
+
+            if (widget.getLastModified() == null) {
+                widget.setLastModified(now);
+            }
+
+            importedWidgets.add(widget);
+        }
+
+        validateUniqueIds(importedWidgets);
+        validateImportedParents(importedWidgets);
+
+        return withWriteLock("import", () -> {
+            widgetRepository.replaceAll(importedWidgets);
+            mutationListeners.forEach(WidgetMutationListener::onReset);
+            return importedWidgets.size();
+        });
+    }
+
+    // Writes every widget, top-level widgets first and then the widgets of each frame, each group in
+    // z order, as of a single version of the board
+    public void exportAll(WidgetWriter writer) throws IOException {
+        try (Stream<Widget> widgets = streamAll()) {
+            Iterator<Widget> iterator = widgets.iterator();
 
-    public WidgetService(ApplicationContext context, @Value("${use-sql-repository}") boolean suseSQLRepository) {
-        LOG.info("Using {} repository", suseSQLRepository ? "SQL" : "in-memory");
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+            }
+        }
+    }
 
-        widgetRepository = (WidgetRepository) context.getBean(suseSQLRepository ? "SQLRepository" : "InMemoryRepository");
+    // Every widget in export order, as of a single version of the board. The stream must be closed.
+    public Stream<Widget> streamAll() {
+        return widgetRepository.streamAllByParentAndZ();
     }
 
-    @Transactional
-    public synchronized Widget create(WidgetRequest request) {
-        Widget widget = convertRequestToWidget(request, getZIndex(request));
-        recalculateZIndexes(widget.getZ(), null);
-        return widgetRepository.save(widget);
+    // Replaces the board with a snapshot replicated from a leader instance
+    public void applyReplicatedSnapshot(List<Widget> widgets) {
+        withWriteLock("replicatedSnapshot", () -> {
+            widgetRepository.replaceAll(widgets);
+            mutationListeners.forEach(WidgetMutationListener::onReset);
+            return null;
+        });
     }
 
-    @Transactional
-    public synchronized Widget update(Long id, WidgetRequest request) throws WidgetNotFoundException {
-        Widget updatedWidget = convertRequestToWidget(request, getZIndex(request));
-        widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
-        recalculateZIndexes(updatedWidget.getZ(), id);
+    // Applies a widget replicated from a leader instance as is, its z-index was already made unique there
+    public void applyReplicatedSave(Widget widget) {
+        withWriteLock("replicatedSave", () -> {
+            put(widget);
+            return null;
+        });
+    }
 
-        updatedWidget.setId(id);
-        updatedWidget.setLastModified(LocalDateTime.now());
+    public void applyReplicatedDelete(Long id) {
+        withWriteLock("replicatedDelete", () -> {
+            remove(id);
+            return null;
+        });
+    }
 
-        return widgetRepository.save(updatedWidget);
+    public void applyReplicatedZIndexIncrease(List<Long> ids) {
+        withWriteLock("replicatedZIndexIncrease", () -> {
+            increaseZIndex(ids);
+            return null;
+        });
     }
 
-    @Transactional
-    public synchronized Widget delete(Long id) throws WidgetNotFoundException {
-        Widget widgetToDelete = widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
-        widgetRepository.delete(widgetToDelete);
-        return widgetToDelete;
+    public void applyReplicatedZIndexDecrease(List<Long> ids) {
+        withWriteLock("replicatedZIndexDecrease", () -> {
+            decreaseZIndex(ids);
+            return null;
+        });
+    }
+
+    // Runs the action while no mutation is in progress, so it sees the board as of the last notified mutation
+    public <T> T runExclusively(Supplier<T> action) {
+        return withWriteLock("exclusiveRead", action::get);
     }
 
     public Widget get(Long id) throws WidgetNotFoundException {
-        return widgetRepository.findById(id).orElseThrow(WidgetNotFoundException::new);
+        return find(id).orElseThrow(WidgetNotFoundException::new);
+    }
+
+    public Optional<Widget> find(Long id) {
+        return widgetRepository.findById(id);
+    }
+
+    // The topmost widget containing the point. A frame is hit through: the topmost of its widgets
+    // containing the point is hit before it, if any.
+    public Widget getAt(int x, int y) throws WidgetNotFoundException {
+        return findTopmostAt(x, y).orElseThrow(WidgetNotFoundException::new);
+    }
+
+    // The topmost widget at each point, null where there is no widget
+    public List<Widget> getAt(List<Point> points) {
+        return points.stream()
+                .map(point -> findTopmostAt(point.getX(), point.getY()).orElse(null))
+                .collect(Collectors.toList());
+    }
+
+    // Top-level widgets overlapping the area from minX, minY (inclusive) to maxX, maxY (exclusive) whose
+    // width or height is at least minSize, from the background to the foreground
+    public List<Widget> getAllIntersecting(int minX, int minY, int maxX, int maxY, int minSize) {
+        return widgetRepository.findAllIntersecting(minX, minY, maxX, maxY, minSize);
+    }
+
+    public long countIntersecting(int minX, int minY, int maxX, int maxY) {
+        return widgetRepository.countIntersecting(minX, minY, maxX, maxY);
     }
 
     public Page<Widget> getAll(Pageable pageable) {
-        return widgetRepository.findAll(pageable);
+        return widgetRepository.findAll(withTieBreaks(pageable));
     }
 
-    private void recalculateZIndexes(int zIndex, Long id) {
-        Iterator<Widget> iterator = widgetRepository.getWidgetsFromZIndex(zIndex).iterator();
-        List<Long> widgetIdsToIncreaseZIndex = new ArrayList<>();
+    // A page of the board at the given version, or at the current version if there is none. The version
+    // read is returned with the page so the next pages can be read from the same version.
+    public VersionedPage getAll(Pageable pageable, Long version)
+            throws InvalidPageSizeException, InvalidSortException, BoardVersionNotFoundException {
+        validatePageable(pageable);
+
+        OptionalLong versionToRead = version == null ? retainCurrentVersion() : OptionalLong.of(version);
 
-        boolean checkWidgetAbove = true;
+        if (versionToRead.isEmpty()) {
+            return new VersionedPage(getAll(pageable), null);
+        }
+
+        Page<Widget> page = getAllAtVersion(pageable, versionToRead.getAsLong())
+                .orElseThrow(() -> new BoardVersionNotFoundException(versionToRead.getAsLong()));
 
-        while (iterator.hasNext() && checkWidgetAbove) {
-            Widget widget = iterator.next();
+        return new VersionedPage(page, versionToRead.getAsLong());
+    }
 
-            if (widget.getZ() == zIndex && !widget.getId().equals(id)) {
-                widgetIdsToIncreaseZIndex.add(widget.getId());
-                zIndex++;
-            } else {
-                checkWidgetAbove = false;
+    // What changed since the version a client last read, read as of a single version of the board: each
+    // widget changed since once, as it is now, and a tombstone for each deleted since, a widget created
+    // and deleted since being left out. Without a version, or when the changes since it are no longer
+    // kept, the whole board is returned to resync from.
+    //
+    // The changes are read under the lock, as they cost what changed. The whole board of a resync is
+    // streamed from the snapshot published at the version once the lock is released when the board is
+    // served from memory; the SQL board keeps no such snapshot, so it is read under the lock.
+    public WidgetChanges getChanges(Long since) {
+        Supplier<WidgetChanges> changes = withWriteLock("changes", () -> {
+            long version = changeLog.getVersion();
+            Optional<Map<Long, Boolean>> changedIds = since == null ? Optional.empty() : changeLog.getChangesSince(since);
+
+            if (changedIds.isPresent()) {
+                WidgetChanges delta = getChanges(version, changedIds.get());
+                return () -> delta;
             }
+
+            if (isServedFromMemory()) {
+                Stream<Widget> board = streamAll();
+                return () -> getResync(version, board);
+            }
+
+            WidgetChanges resync = getResync(version, streamAll());
+            return () -> resync;
+        });
+
+        return changes.get();
+    }
+
+    private WidgetChanges getChanges(long version, Map<Long, Boolean> changedIds) {
+        List<Widget> changedWidgets = new ArrayList<>(changedIds.size());
+        widgetRepository.findAllById(changedIds.keySet()).forEach(changedWidgets::add);
+
+        Set<Long> existingIds = changedWidgets.stream().map(Widget::getId).collect(Collectors.toSet());
+        List<Long> deletedIds = changedIds.entrySet().stream()
+                .filter(change -> !change.getValue() && !existingIds.contains(change.getKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        return new WidgetChanges(version, false, changedWidgets, deletedIds);
+    }
+
+    private static WidgetChanges getResync(long version, Stream<Widget> board) {
+        try (board) {
+            return new WidgetChanges(version, true, board.collect(Collectors.toList()), List.of());
+        }
+    }
+
+    // A page of the top-level widgets whose z-index is within [zFrom, zTo], sorted by z-index, and how many there are
+    public Page<Widget> getAllInZRange(int zFrom, int zTo, Pageable pageable)
+            throws InvalidPageSizeException, InvalidSortException, InvalidZRangeException {
+        validatePageable(pageable);
+        validateZRange(zFrom, zTo);
+
+        Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(WidgetSortField.Z.getProperty()));
+        if (!order.getProperty().equals(WidgetSortField.Z.getProperty())) {
+            throw new InvalidSortException("Widgets within a z range can only be sorted by z");
         }
 
+        return widgetRepository.findAllByParentIdIsNullAndZBetween(zFrom, zTo,
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(order)));
+    }
+
+    // Number of top-level widgets whose z-index is within [zFrom, zTo], counted without reading them
+    public long countInZRange(int zFrom, int zTo) throws InvalidZRangeException {
+        validateZRange(zFrom, zTo);
+        return widgetRepository.countByParentIdIsNullAndZBetween(zFrom, zTo);
+    }
+
+    // A page of the board as it is drawn, from the background to the foreground: each top-level widget
+    // followed by the widgets of its frame. Those are returned at their position on the board, resolved
+    // from their frame's as the page is read, and keep their z-index within the frame.
+    public Page<Widget> getAllInStackingOrder(Pageable pageable) throws InvalidPageSizeException {
+        if (pageable.getPageSize() > MAX_PAGE_SIZE) {
+            throw new InvalidPageSizeException(MAX_PAGE_SIZE);
+        }
+
+        Page<Widget> page = widgetRepository.findAllInStackingOrder(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        Map<Long, Optional<Widget>> frames = new HashMap<>();
+
+        return page.map(widget -> widget.getParentId() == null
+                ? widget
+                : frames.computeIfAbsent(widget.getParentId(), widgetRepository::findById)
+                        .map(frame -> copyOf(widget).x(frame.getX() + widget.getX()).y(frame.getY() + widget.getY()).build())
+                        .orElse(widget));
+    }
+
+    // A page of the board as it was at the given version, empty if that version is no longer available
+    public Optional<Page<Widget>> getAllAtVersion(Pageable pageable, long version) {
+        return widgetRepository.findAllAtVersion(withTieBreaks(pageable), version);
+    }
+
+    // The version of the board reads are currently served from, empty if the board is not versioned
+    public OptionalLong getCurrentVersion() {
+        return widgetRepository.getCurrentVersion();
+    }
+
+    // The current version of the board, kept readable for a while; empty if the board is not versioned
+    public OptionalLong retainCurrentVersion() {
+        return widgetRepository.retainCurrentVersion();
+    }
+
+    // Whether the board was read or written since the last call; a board not served from memory always is
+    public boolean pollAccessed() {
+        return !isServedFromMemory() || ((WidgetInMemoryRepository) widgetRepository).pollAccessed();
+    }
+
+    public boolean isHibernating() {
+        return isServedFromMemory() && ((WidgetInMemoryRepository) widgetRepository).isHibernating();
+    }
+
+    // Writes the in-memory board to the file and releases it until it is next read or written, timing
+    // that with the wake timer. False if it is not served from memory, already hibernating or being paged through.
+    public boolean hibernate(Path file, Timer wakeTimer) throws IOException {
+        if (!isServedFromMemory()) {
+            return false;
+        }
+
+        WidgetInMemoryRepository repository = (WidgetInMemoryRepository) widgetRepository;
+        return withWriteLock("hibernate", () -> repository.hibernate(file, wakeTimer));
+    }
+
+    public void validatePageable(Pageable pageable) throws InvalidPageSizeException, InvalidSortException {
+        if (pageable.getPageSize() > MAX_PAGE_SIZE) {
+            throw new InvalidPageSizeException(MAX_PAGE_SIZE);
+        }
+
+        validateSort(pageable.getSort());
+    }
+
+    private <T, E extends Exception> T withWriteLock(String operation, LockedOperation<T, E> lockedOperation) throws E {
+        return withWriteLock(operation, false, lockedOperation);
+    }
+
+    // The changes of the operation are recorded in the journal once it completes, so it can be undone
+    private <T, E extends Exception> T withUndoableWriteLock(String operation, LockedOperation<T, E> lockedOperation) throws E {
+        return withWriteLock(operation, true, lockedOperation);
+    }
+
+    // Every mutation holds this service's lock; the time spent waiting for it and holding it is recorded.
+    // The transaction is committed before the lock is released, so the next mutation sees all of its
+    // writes and none of them are flushed while it runs.
+    private <T, E extends Exception> T withWriteLock(String operation, boolean undoable, LockedOperation<T, E> lockedOperation) throws E {
+        long requestedAt = System.nanoTime();
+
+        synchronized (this) {
+            WidgetLockEvent event = new WidgetLockEvent();
+            event.begin();
+            event.operation = operation;
+            event.waitTime = System.nanoTime() - requestedAt;
+
+            boolean completed = false;
+            if (undoable) {
+                journal.begin();
+            }
+
+            try {
+                T result = inTransaction(lockedOperation);
+                completed = true;
+                return result;
+            } finally {
+                if (undoable && completed) {
+                    journal.commit();
+                } else if (undoable) {
+                    journal.discard();
+                }
+                event.commit();
+            }
+        }
+    }
+
+    // A checked exception rolls the transaction back and is rethrown as is
+    @SuppressWarnings("unchecked")
+    private <T, E extends Exception> T inTransaction(LockedOperation<T, E> lockedOperation) throws E {
+        try {
+            return transactionOperations.execute(status -> {
+                try {
+                    return lockedOperation.run();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CheckedOperationException(e);
+                }
+            });
+        } catch (CheckedOperationException e) {
+            throw (E) e.getCause();
+        }
+    }
+
+    private void recalculateZIndexes(Long parentId, int zIndex, Long id) {
+        ZIndexCascadeEvent event = new ZIndexCascadeEvent();
+        event.begin();
+        event.startZIndex = zIndex;
+
+        List<Long> widgetIdsToIncreaseZIndex = widgetRepository.getZIndexRun(parentId, zIndex, id);
+
+        // The run is contiguous, so it is shifted as a single range
         if (!widgetIdsToIncreaseZIndex.isEmpty()) {
-            widgetRepository.increaseZIndex(widgetIdsToIncreaseZIndex);
+            widgetRepository.increaseZIndexRun(parentId, zIndex, zIndex + widgetIdsToIncreaseZIndex.size() - 1);
+            mutationListeners.forEach(listener -> listener.onZIndexIncreased(widgetIdsToIncreaseZIndex));
+        }
+
+        event.shiftedWidgets = widgetIdsToIncreaseZIndex.size();
+        event.commit();
+    }
+
+    // Saves the widget keeping its id, whether it exists or not
+    private void put(Widget widget) {
+        Widget previousWidget = widgetRepository.findById(widget.getId()).orElse(null);
+        Widget savedWidget = widgetRepository.upsert(widget);
+        mutationListeners.forEach(listener -> listener.onSaved(previousWidget, savedWidget));
+    }
+
+    private void remove(Long id) {
+        widgetRepository.findById(id).ifPresent(widgetToDelete -> {
+            widgetRepository.delete(widgetToDelete);
+            mutationListeners.forEach(listener -> listener.onDeleted(widgetToDelete));
+        });
+    }
+
+    private void increaseZIndex(List<Long> ids) {
+        widgetRepository.increaseZIndex(ids);
+        mutationListeners.forEach(listener -> listener.onZIndexIncreased(ids));
+    }
+
+    private void decreaseZIndex(List<Long> ids) {
+        widgetRepository.decreaseZIndex(ids);
+        mutationListeners.forEach(listener -> listener.onZIndexDecreased(ids));
+    }
+
+    private WidgetHistory getHistory(int applied) {
+        return new WidgetHistory(applied, journal.getUndoable(), journal.getRedoable(), journal.getSizeInBytes());
+    }
+
+    private static void validateZRange(int zFrom, int zTo) throws InvalidZRangeException {
+        if (zFrom > zTo) {
+            throw new InvalidZRangeException("zFrom must not be greater than zTo");
+        }
+    }
+
+    // Frames are top-level widgets, so a widget with widgets of its own cannot be placed in one
+    private void validateParent(Long parentId, Long id) throws InvalidParentException {
+        if (parentId == null) {
+            return;
+        }
+
+        if (parentId.equals(id)) {
+            throw new InvalidParentException("A widget cannot be placed in itself");
+        }
+
+        Widget parent = widgetRepository.findById(parentId)
+                .orElseThrow(() -> new InvalidParentException("Frame " + parentId + " does not exist"));
+
+        if (parent.getParentId() != null) {
+            throw new InvalidParentException("Widget " + parentId + " is in a frame and cannot be a frame itself");
+        }
+
+        if (id != null && widgetRepository.existsByParentId(id)) {
+            throw new InvalidParentException("Widget " + id + " is a frame and cannot be placed in another one");
+        }
+    }
+
+    private static void validateSameParent(Widget widget, Widget other) throws InvalidParentException {
+        if (!Objects.equals(widget.getParentId(), other.getParentId())) {
+            throw new InvalidParentException("Widgets can only be stacked relative to widgets of the same frame");
         }
     }
 
-    // Move the widget to the foreground or take it from the request if it is present
+    private static void validateSteps(int steps) throws InvalidHistoryStepsException {
+        if (steps < 1) {
+            throw new InvalidHistoryStepsException();
+        }
+    }
+
+    private Widget moveAbove(Widget widget, Widget other) throws InvalidParentException {
+        int zIndex = other.getZ() + 1;
+        validateSameParent(widget, other);
+
+        if (widget.getId().equals(other.getId()) || widget.getZ() == zIndex) {
+            return widget;
+        }
+
+        if (widgetRepository.findByParentIdAndZ(widget.getParentId(), zIndex).isPresent()) {
+            recalculateZIndexes(widget.getParentId(), zIndex, widget.getId());
+        }
+
+        return moveTo(widget, zIndex);
+    }
+
+    private Widget moveBelow(Widget widget, Widget other) throws InvalidParentException {
+        validateSameParent(widget, other);
+
+        if (widget.getId().equals(other.getId()) || widget.getZ() == other.getZ() - 1) {
+            return widget;
+        }
+
+        // Without a free slot below, the widget takes the other one's z-index and pushes it up
+        if (widgetRepository.findByParentIdAndZ(widget.getParentId(), other.getZ() - 1).isEmpty()) {
+            return moveTo(widget, other.getZ() - 1);
+        }
+
+        recalculateZIndexes(widget.getParentId(), other.getZ(), widget.getId());
+        return moveTo(widget, other.getZ());
+    }
+
+    private Widget moveTo(Widget widget, int zIndex) {
+        Widget movedWidget = copyOf(widget)
+                .lastModified(now())
+                .z(zIndex)
+                .build();
+
+        Widget savedWidget = widgetRepository.save(movedWidget);
+        mutationListeners.forEach(listener -> listener.onSaved(widget, savedWidget));
+        return savedWidget;
+    }
+
+    // Sorting the ids finds duplicates without boxing a million of them into a set
+    private static void validateUniqueIds(List<Widget> widgets) throws InvalidImportException {
+        long[] ids = widgets.stream().mapToLong(Widget::getId).toArray();
+        Arrays.sort(ids);
+
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] == ids[i - 1]) {
+                throw new InvalidImportException(findSecondOccurrence(widgets, ids[i]) + 1, "Id " + ids[i] + " is not unique");
+            }
+        }
+    }
+
+    // The top-level widgets come first in an import, and their ids are searched sorted
+    private static void validateImportedParents(List<Widget> widgets) throws InvalidImportException {
+        long[] topLevelIds = widgets.stream()
+                .filter(widget -> widget.getParentId() == null)
+                .mapToLong(Widget::getId)
+                .toArray();
+        Arrays.sort(topLevelIds);
+
+        for (int i = topLevelIds.length; i < widgets.size(); i++) {
+            Long parentId = widgets.get(i).getParentId();
+
+            if (Arrays.binarySearch(topLevelIds, parentId) < 0) {
+                throw new InvalidImportException(i + 1, "Frame " + parentId + " is not a top-level widget of the import");
+            }
+        }
+    }
+
+    private static int findSecondOccurrence(List<Widget> widgets, long id) {
+        boolean seen = false;
+
+        for (int i = 0; i < widgets.size(); i++) {
+            if (widgets.get(i).getId() == id) {
+                if (seen) {
+                    return i;
+                }
+                seen = true;
+            }
+        }
+
+        throw new IllegalArgumentException("Id " + id + " is not duplicated");
+    }
+
+    private static Widget scale(Widget widget, int originX, int originY, WidgetScaleRequest request) {
+        return copyOf(widget)
+                .x(originX + (int) Math.round((widget.getX() - originX) * request.getFactorX()))
+                .y(originY + (int) Math.round((widget.getY() - originY) * request.getFactorY()))
+                .width(Math.max(1, (int) Math.round(widget.getWidth() * request.getFactorX())))
+                .height(Math.max(1, (int) Math.round(widget.getHeight() * request.getFactorY())))
+                .build();
+    }
+
+    // All the widgets selected by id must exist. A widget selected along with its frame is left out, as
+    // it goes wherever the frame goes.
+    private List<Widget> select(WidgetSelectionRequest request) throws WidgetNotFoundException {
+        if (request.getIds() == null) {
+            Area area = request.getArea();
+
+            return widgetRepository.findAllIntersecting(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY(), 0).stream()
+                    .filter(area::contains)
+                    .collect(Collectors.toList());
+        }
+
+        List<Long> ids = request.getIds().stream().distinct().collect(Collectors.toList());
+        List<Widget> widgets = new ArrayList<>(ids.size());
+        widgetRepository.findAllById(ids).forEach(widgets::add);
+
+        if (widgets.size() != ids.size()) {
+            throw new WidgetNotFoundException();
+        }
+
+        Set<Long> selectedIds = Set.copyOf(ids);
+        widgets.removeIf(widget -> widget.getParentId() != null && selectedIds.contains(widget.getParentId()));
+        return widgets;
+    }
+
+    // Saves the transformed widgets in a single batch
+    private List<Widget> transform(List<Widget> widgets, UnaryOperator<Widget> transformation) {
+        LocalDateTime now = now();
+        List<Widget> transformedWidgets = new ArrayList<>(widgets.size());
+
+        for (Widget widget : widgets) {
+            Widget transformedWidget = transformation.apply(widget);
+            transformedWidget.setLastModified(now);
+            transformedWidgets.add(transformedWidget);
+        }
+
+        List<Widget> savedWidgets = new ArrayList<>(transformedWidgets.size());
+        widgetRepository.saveAll(transformedWidgets).forEach(savedWidgets::add);
+
+        for (int i = 0; i < savedWidgets.size(); i++) {
+            Widget previousWidget = widgets.get(i);
+            Widget savedWidget = savedWidgets.get(i);
+            mutationListeners.forEach(listener -> listener.onSaved(previousWidget, savedWidget));
+        }
+
+        return savedWidgets;
+    }
+
+    // The time widgets are stamped with, to the microsecond the database keeps, so a widget returned
+    // when it is written is the widget read back afterwards
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private static Widget.WidgetBuilder copyOf(Widget widget) {
+        return Widget.builder()
+                .id(widget.getId())
+                .parentId(widget.getParentId())
+                .lastModified(widget.getLastModified())
+                .width(widget.getWidth())
+                .height(widget.getHeight())
+                .x(widget.getX())
+                .y(widget.getY())
+                .z(widget.getZ());
+    }
+
+    private Optional<Widget> findTopmostAt(int x, int y) {
+        return widgetRepository.findAllContainingPoint(x, y, PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .map(widget -> findTopmostChildAt(widget, x - widget.getX(), y - widget.getY()).orElse(widget));
+    }
+
+    // The widgets of a frame are clipped to it, the point being relative to the frame
+    private Optional<Widget> findTopmostChildAt(Widget frame, int x, int y) {
+        List<Widget> children = widgetRepository.findAllByParentIdOrderByZ(frame.getId());
+
+        for (int i = children.size() - 1; i >= 0; i--) {
+            Widget child = children.get(i);
+
+            if (x >= child.getX() && x - child.getX() < child.getWidth() && y >= child.getY() && y - child.getY() < child.getHeight()) {
+                return Optional.of(child);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    // Only a single indexed property can be used, so every sort is served from an ordered index
+    private static void validateSort(Sort sort) throws InvalidSortException {
+        List<Sort.Order> orders = sort.toList();
+
+        if (orders.size() > 1) {
+            throw new InvalidSortException("Widgets can only be sorted by one property");
+        }
+
+        for (Sort.Order order : orders) {
+            if (WidgetSortField.fromProperty(order.getProperty()).isEmpty()) {
+                throw new InvalidSortException("Widgets cannot be sorted by " + order.getProperty());
+            }
+        }
+    }
+
+    // Widgets sharing a sorted value are ordered by z-index, then by id as z-indexes are only unique
+    // within a frame, so pages are stable. The ties follow the direction of the sort, as the in-memory
+    // indexes are read backwards for a descending one, and an unsorted page is sorted by z-index as it
+    // is in memory, so both repositories page the same way.
+    private Pageable withTieBreaks(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return pageable;
+        }
+
+        Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(WidgetSortField.Z.getProperty()));
+        Sort sort = Sort.by(order);
+
+        if (!order.getProperty().equals(WidgetSortField.Z.getProperty())) {
+            sort = sort.and(Sort.by(order.getDirection(), WidgetSortField.Z.getProperty()));
+        }
+
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort.and(Sort.by(order.getDirection(), "id")));
+    }
+
+    // Move the widget to the foreground of its frame or take it from the request if it is present
     private int getZIndex(WidgetRequest request) {
-        return request.getZ() == null ? widgetRepository.getMaxZIndex() + 1 : request.getZ();
+        return request.getZ() == null ? widgetRepository.getMaxZIndex(request.getParentId()) + 1 : request.getZ();
     }
 
     private Widget convertRequestToWidget(WidgetRequest request, int zIndex) {
@@ -99,6 +925,54 @@ public class WidgetService {
                 .x(request.getX())
                 .y(request.getY())
                 .z(zIndex)
+                .parentId(request.getParentId())
                 .build();
     }
+
+    // Returns null once there are no more widgets
+    @FunctionalInterface
+    public interface WidgetReader {
+        Widget read() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface WidgetWriter {
+        void write(Widget widget) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LockedOperation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    // Widgets undone or redone are stamped with the time they were put back
+    private class JournalReplay implements WidgetJournal.Replay {
+
+        @Override
+        public void put(Widget widget) {
+            widget.setLastModified(now());
+            WidgetService.this.put(widget);
+        }
+
+        @Override
+        public void remove(long id) {
+            WidgetService.this.remove(id);
+        }
+
+        @Override
+        public void increaseZIndex(List<Long> ids) {
+            WidgetService.this.increaseZIndex(ids);
+        }
+
+        @Override
+        public void decreaseZIndex(List<Long> ids) {
+            WidgetService.this.decreaseZIndex(ids);
+        }
+    }
+
+    private static class CheckedOperationException extends RuntimeException {
+        CheckedOperationException(Exception cause) {
+            super(cause);
+        }
+    }
 }
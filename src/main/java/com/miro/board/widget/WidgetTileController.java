@@ -0,0 +1,26 @@
+package com.miro.board.widget;
+
+import com.miro.board.exception.InvalidTileException;
+import com.miro.board.widget.model.WidgetTile;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping(value = "/widgets/tiles")
+public class WidgetTileController {
+
+    private final WidgetTileService widgetTileService;
+
+    public WidgetTileController(WidgetTileService widgetTileService) {
+        this.widgetTileService = widgetTileService;
+    }
+
+    @GetMapping("{zoom}/{x}/{y}")
+    public WidgetTile getTile(@PathVariable int zoom, @PathVariable long x, @PathVariable long y) throws InvalidTileException {
+        return widgetTileService.getTile(zoom, x, y);
+    }
+}
@@ -0,0 +1,166 @@
+package com.miro.board.widget;
+
+import com.miro.board.exception.InvalidTileException;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetTile;
+import lombok.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Builds and caches tiles of the board for zoomed-out rendering. A tile at zoom level z covers
+ * TILE_PIXELS << (MAX_ZOOM - z) board units per side and is drawn on TILE_PIXELS pixels, so a widget
+ * smaller than one pixel is left out of it.
+ *
+ * Tiles only list widgets in drawing order, which z-index shifts never change, so a tile is only
+ * invalidated when a widget overlapping it is created, updated or deleted. Tiles are evicted
+ * eagerly on those mutations and rebuilt lazily on the next request.
+ * */
+@Service
+public class WidgetTileService implements WidgetMutationListener {
+
+    public static final int MAX_ZOOM = 10;
+
+    private static final int TILE_PIXELS = 256;
+    private static final int MAX_CACHED_TILES = 10_000;
+    private static final int MAX_TILES_TO_EVICT_ONE_BY_ONE = 64;
+
+    private final WidgetService widgetService;
+
+    // Guarded by itself; least recently used tiles are evicted first
+    private final Map<TileKey, WidgetTile> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, WidgetTile> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    private long invalidations;
+
+    public WidgetTileService(WidgetService widgetService) {
+        this.widgetService = widgetService;
+        widgetService.addMutationListener(this);
+    }
+
+    public WidgetTile getTile(int zoom, long x, long y) throws InvalidTileException {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new InvalidTileException(MAX_ZOOM);
+        }
+
+        TileKey key = new TileKey(zoom, x, y);
+        long invalidationsBeforeBuild;
+
+        synchronized (tiles) {
+            WidgetTile tile = tiles.get(key);
+
+            if (tile != null) {
+                return tile;
+            }
+
+            invalidationsBeforeBuild = invalidations;
+        }
+
+        WidgetTile tile = buildTile(key);
+
+        synchronized (tiles) {
+            // The board changed while the tile was being built, it may already be stale
+            if (invalidations == invalidationsBeforeBuild) {
+                tiles.put(key, tile);
+            }
+        }
+
+        return tile;
+    }
+
+    @Override
+    public void onSaved(Widget previous, Widget saved) {
+        if (previous != null) {
+            invalidate(previous);
+        }
+        invalidate(saved);
+    }
+
+    @Override
+    public void onDeleted(Widget deleted) {
+        invalidate(deleted);
+    }
+
+    private WidgetTile buildTile(TileKey key) {
+        long size = getTileSize(key.getZoom());
+        long minX;
+        long minY;
+
+        // A tile whose corner does not even fit a long is far outside of the board, rather than wrapped into it
+        try {
+            minX = Math.multiplyExact(key.getX(), size);
+            minY = Math.multiplyExact(key.getY(), size);
+        } catch (ArithmeticException e) {
+            return new WidgetTile(key.getZoom(), key.getX(), key.getY(), size, Collections.emptyList(), 0);
+        }
+
+        // Tiles outside of the coordinates a widget can have are always empty
+        if (minX + size <= Integer.MIN_VALUE || minX > Integer.MAX_VALUE || minY + size <= Integer.MIN_VALUE || minY > Integer.MAX_VALUE) {
+            return new WidgetTile(key.getZoom(), key.getX(), key.getY(), size, Collections.emptyList(), 0);
+        }
+
+        int areaMinX = clamp(minX);
+        int areaMinY = clamp(minY);
+        int areaMaxX = clamp(minX + size);
+        int areaMaxY = clamp(minY + size);
+        int pixelSize = (int) (size / TILE_PIXELS);
+
+        List<WidgetTile.TileWidget> visibleWidgets = widgetService.getAllIntersecting(areaMinX, areaMinY, areaMaxX, areaMaxY, pixelSize)
+                .stream()
+                .map(widget -> new WidgetTile.TileWidget(widget.getId(), widget.getX(), widget.getY(), widget.getWidth(), widget.getHeight()))
+                .collect(Collectors.toUnmodifiableList());
+        long allWidgets = widgetService.countIntersecting(areaMinX, areaMinY, areaMaxX, areaMaxY);
+
+        return new WidgetTile(key.getZoom(), key.getX(), key.getY(), size, visibleWidgets, Math.max(0, allWidgets - visibleWidgets.size()));
+    }
+
+    private void invalidate(Widget widget) {
+        synchronized (tiles) {
+            invalidations++;
+
+            for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+                long size = getTileSize(zoom);
+                long firstColumn = Math.floorDiv((long) widget.getX(), size);
+                long lastColumn = Math.floorDiv((long) widget.getX() + Math.max(widget.getWidth(), 1) - 1, size);
+                long firstRow = Math.floorDiv((long) widget.getY(), size);
+                long lastRow = Math.floorDiv((long) widget.getY() + Math.max(widget.getHeight(), 1) - 1, size);
+
+                if ((lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) <= MAX_TILES_TO_EVICT_ONE_BY_ONE) {
+                    for (long column = firstColumn; column <= lastColumn; column++) {
+                        for (long row = firstRow; row <= lastRow; row++) {
+                            tiles.remove(new TileKey(zoom, column, row));
+                        }
+                    }
+                } else {
+                    int tileZoom = zoom;
+                    tiles.keySet().removeIf(key -> key.getZoom() == tileZoom
+                            && key.getX() >= firstColumn && key.getX() <= lastColumn
+                            && key.getY() >= firstRow && key.getY() <= lastRow);
+                }
+            }
+        }
+    }
+
+    private static long getTileSize(int zoom) {
+        return (long) TILE_PIXELS << (MAX_ZOOM - zoom);
+    }
+
+    private static int clamp(long coordinate) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, coordinate));
+    }
+
+    @Value
+    private static class TileKey {
+        int zoom;
+        long x;
+        long y;
+    }
+}
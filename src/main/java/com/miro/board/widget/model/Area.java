@@ -0,0 +1,30 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+// The area from minX, minY (inclusive) to maxX, maxY (exclusive)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Area {
+    @NotNull
+    private Integer minX;
+    @NotNull
+    private Integer minY;
+    @NotNull
+    private Integer maxX;
+    @NotNull
+    private Integer maxY;
+
+    // Widened to long, as a widget may reach past the largest int
+    public boolean contains(Widget widget) {
+        return widget.getX() >= minX && (long) widget.getX() + widget.getWidth() <= maxX
+                && widget.getY() >= minY && (long) widget.getY() + widget.getHeight() <= maxY;
+    }
+}
@@ -0,0 +1,20 @@
+package com.miro.board.widget.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class HitTestRequest {
+    public static final int MAX_POINTS = 100;
+
+    @NotEmpty
+    @Size(max = MAX_POINTS, message = "At most " + MAX_POINTS + " points can be tested at once")
+    private List<@Valid @NotNull Point> points;
+}
@@ -0,0 +1,19 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Point {
+    @NotNull
+    private Integer x;
+    @NotNull
+    private Integer y;
+}
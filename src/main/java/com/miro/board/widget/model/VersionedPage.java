@@ -0,0 +1,16 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Page;
+
+/**
+ * A page of widgets with the version of the board it was read from, or no version if the repository
+ * does not keep versions of the board.
+ * */
+@Getter
+@AllArgsConstructor
+public class VersionedPage {
+    private final Page<Widget> page;
+    private final Long version;
+}
@@ -9,6 +9,8 @@ import lombok.Setter;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.LocalDateTime;
 
 @Getter
@@ -17,10 +19,22 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_widget_z", columnList = "z"),
+        @Index(name = "idx_widget_parent_z", columnList = "parentId, z"),
+        @Index(name = "idx_widget_last_modified", columnList = "lastModified, z"),
+        @Index(name = "idx_widget_x", columnList = "x, z"),
+        @Index(name = "idx_widget_y", columnList = "y, z"),
+        @Index(name = "idx_widget_width", columnList = "width, z"),
+        @Index(name = "idx_widget_height", columnList = "height, z")
+})
 public class Widget {
     @Id
     @GeneratedValue
     private Long id;
+    // The frame the widget belongs to, null for a top-level widget. The position and z-index of a
+    // child are relative to its frame, so moving or restacking a frame leaves its children untouched.
+    private Long parentId;
     private LocalDateTime lastModified;
     private int width;
     private int height;
@@ -0,0 +1,20 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Changes to the board since the version a client last read, bringing its copy to version: every
+ * widget changed since as it is now, and the ids of those deleted since. When the changes since that
+ * version are no longer kept, resync is set and the widgets are the whole board, replacing the copy.
+ * */
+@Getter
+@AllArgsConstructor
+public class WidgetChanges {
+    private final long version;
+    private final boolean resync;
+    private final List<Widget> widgets;
+    private final List<Long> deleted;
+}
@@ -0,0 +1,19 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * State of the undo and redo history after an undo or redo, which may have applied fewer operations
+ * than requested if the history did not hold that many.
+ * */
+@Getter
+@AllArgsConstructor
+public class WidgetHistory {
+    // Operations undone or redone by the request
+    private final int applied;
+    private final int undoable;
+    private final int redoable;
+    // Memory taken by the history, bounded by undo.history-budget-bytes
+    private final long sizeInBytes;
+}
@@ -0,0 +1,15 @@
+package com.miro.board.widget.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+@Getter
+@Setter
+public class WidgetMoveRequest extends WidgetSelectionRequest {
+    @NotNull
+    private Integer dx;
+    @NotNull
+    private Integer dy;
+}
@@ -20,4 +20,6 @@ public class WidgetRequest {
     @NotNull
     private Integer y;
     private Integer z;
+    // Places the widget in a frame, its position and z-index then being relative to the frame's
+    private Long parentId;
 }
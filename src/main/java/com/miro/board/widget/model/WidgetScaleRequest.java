@@ -0,0 +1,23 @@
+package com.miro.board.widget.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+// Scales the widgets' positions relative to the origin and their sizes; sizes never go below 1
+@Getter
+@Setter
+public class WidgetScaleRequest extends WidgetSelectionRequest {
+    @NotNull
+    private Integer originX;
+    @NotNull
+    private Integer originY;
+    @NotNull
+    @Positive
+    private Double factorX;
+    @NotNull
+    @Positive
+    private Double factorY;
+}
@@ -0,0 +1,29 @@
+package com.miro.board.widget.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+// Selects widgets either by id or as the widgets lying entirely within an area
+@Getter
+@Setter
+public abstract class WidgetSelectionRequest {
+    public static final int MAX_IDS = 10_000;
+
+    @Size(min = 1, max = MAX_IDS, message = "Between 1 and " + MAX_IDS + " widgets can be selected by id")
+    private List<@NotNull Long> ids;
+    @Valid
+    private Area area;
+
+    @JsonIgnore
+    @AssertTrue(message = "Either ids or area must be given")
+    public boolean isSingleSelection() {
+        return (ids == null) != (area == null);
+    }
+}
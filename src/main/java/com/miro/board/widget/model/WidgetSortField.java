@@ -0,0 +1,43 @@
+package com.miro.board.widget.model;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * Widget properties that can be used to sort the board. Ties are broken by the z-index, then by the
+ * id, so every comparator defines a total order over the widgets. Z-indexes are only unique within a
+ * frame, and the id also breaks the ties left while a z-index shift moves a widget into the slot of
+ * the widget being updated, before that one is saved; a widget without id sorts first among the
+ * widgets sharing its values. A descending sort reverses the whole order, ties included.
+ * */
+public enum WidgetSortField {
+    Z("z", Comparator.comparingInt(Widget::getZ)),
+    LAST_MODIFIED("lastModified", Comparator.comparing(Widget::getLastModified,
+            Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder())).thenComparingInt(Widget::getZ)),
+    X("x", Comparator.comparingInt(Widget::getX).thenComparingInt(Widget::getZ)),
+    Y("y", Comparator.comparingInt(Widget::getY).thenComparingInt(Widget::getZ)),
+    WIDTH("width", Comparator.comparingInt(Widget::getWidth).thenComparingInt(Widget::getZ)),
+    HEIGHT("height", Comparator.comparingInt(Widget::getHeight).thenComparingInt(Widget::getZ));
+
+    private final String property;
+    private final Comparator<Widget> comparator;
+
+    WidgetSortField(String property, Comparator<Widget> comparator) {
+        this.property = property;
+        this.comparator = comparator.thenComparing(Widget::getId, Comparator.nullsFirst(Comparator.<Long>naturalOrder()));
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Comparator<Widget> getComparator() {
+        return comparator;
+    }
+
+    public static Optional<WidgetSortField> fromProperty(String property) {
+        return Arrays.stream(values()).filter(field -> field.property.equals(property)).findAny();
+    }
+}
@@ -0,0 +1,32 @@
+package com.miro.board.widget.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Simplified view of the widgets overlapping a tile of the board. Widgets are listed in drawing
+ * order, from the background to the foreground, and only with their geometry. Widgets too small to
+ * be visible at the tile's zoom level are only counted.
+ * */
+@Getter
+@AllArgsConstructor
+public class WidgetTile {
+    private final int zoom;
+    private final long x;
+    private final long y;
+    private final long size;
+    private final List<TileWidget> widgets;
+    private final long hiddenWidgets;
+
+    @Getter
+    @AllArgsConstructor
+    public static class TileWidget {
+        private final long id;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+    }
+}
@@ -0,0 +1,64 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.replication.ReplicaRequestFilter;
+import com.miro.board.replication.ReplicationFollower;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Reactive stack, enabled with spring.main.web-application-type=reactive. The widget API is served
+ * by Netty through functional routes mirroring the WidgetController and WidgetTileController.
+ * */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfiguration {
+
+    // Tomcat is on the classpath for the servlet stack and would otherwise be picked first
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // Literal paths come before the ones taking an id, as routes are matched in order
+    @Bean
+    public RouterFunction<ServerResponse> widgetRoutes(WidgetHandler handler, ObjectProvider<ReplicationFollower> replicationFollower) {
+        RouterFunction<ServerResponse> routes = RouterFunctions.route()
+                .path("/widgets", widgets -> widgets
+                        .GET("", handler::getAll)
+                        .POST("", handler::create)
+                        .POST("/move", handler::move)
+                        .POST("/scale", handler::scale)
+                        .GET("/export", handler::exportAll)
+                        .POST("/import", handler::importAll)
+                        .POST("/undo", handler::undo)
+                        .POST("/redo", handler::redo)
+                        .GET("/history", handler::getHistory)
+                        .GET("/count", handler::count)
+                        .GET("/stacked", handler::getAllStacked)
+                        .GET("/changes", handler::getChanges)
+                        .GET("/at", handler::getAt)
+                        .POST("/at", handler::getAtPoints)
+                        .GET("/tiles/{zoom}/{x}/{y}", handler::getTile)
+                        .GET("/{id}", handler::get)
+                        .PUT("/{id}", handler::update)
+                        .DELETE("/{id}", handler::delete)
+                        .POST("/{id}/front", handler::moveToFront)
+                        .POST("/{id}/back", handler::moveToBack)
+                        .POST("/{id}/above/{otherId}", handler::moveAbove)
+                        .POST("/{id}/below/{otherId}", handler::moveBelow))
+                .build();
+
+        ReplicationFollower follower = replicationFollower.getIfAvailable();
+        if (follower != null) {
+            routes = routes.filter(new ReplicaRequestFilter(follower));
+        }
+
+        return routes.filter(new WidgetErrorFilter());
+    }
+}
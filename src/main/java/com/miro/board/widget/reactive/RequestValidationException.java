@@ -0,0 +1,25 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.exception.ErrorResponse;
+
+import javax.validation.ConstraintViolation;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// A request body breaking its constraints, which the servlet stack reports as a MethodArgumentNotValidException
+class RequestValidationException extends RuntimeException {
+
+    private final List<ErrorResponse.Error> errors;
+
+    RequestValidationException(Set<? extends ConstraintViolation<?>> violations) {
+        super("Validation error");
+        errors = violations.stream()
+                .map(violation -> new ErrorResponse.Error(violation.getPropertyPath().toString(), violation.getMessage()))
+                .collect(Collectors.toList());
+    }
+
+    List<ErrorResponse.Error> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,83 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.exception.BoardVersionNotFoundException;
+import com.miro.board.exception.ErrorResponse;
+import com.miro.board.exception.InvalidHistoryStepsException;
+import com.miro.board.exception.InvalidImportException;
+import com.miro.board.exception.InvalidPageSizeException;
+import com.miro.board.exception.InvalidParentException;
+import com.miro.board.exception.InvalidSortException;
+import com.miro.board.exception.InvalidTileException;
+import com.miro.board.exception.InvalidZRangeException;
+import com.miro.board.exception.NotFoundException;
+import com.miro.board.exception.ReadOnlyReplicaException;
+import com.miro.board.exception.StaleReplicaException;
+import com.miro.board.exception.WidgetNotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Maps the errors of the widget routes to the same statuses and bodies as the GlobalExceptionHandler
+ * does for the servlet stack. Errors it does not know are left to the default handling.
+ * */
+class WidgetErrorFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        return Mono.defer(() -> next.handle(request)).onErrorResume(this::toErrorResponse);
+    }
+
+    private Mono<ServerResponse> toErrorResponse(Throwable error) {
+        if (error instanceof RequestValidationException) {
+            ErrorResponse errorResponse = new ErrorResponse("Validation error");
+            errorResponse.addErrors(((RequestValidationException) error).getErrors());
+            return ServerResponse.status(HttpStatus.UNPROCESSABLE_ENTITY).bodyValue(errorResponse);
+        }
+
+        if (error instanceof ResponseStatusException) {
+            ResponseStatusException statusException = (ResponseStatusException) error;
+            return ServerResponse.status(statusException.getStatus())
+                    .headers(headers -> headers.addAll(statusException.getResponseHeaders()))
+                    .bodyValue(new ErrorResponse(statusException.getReason()));
+        }
+
+        HttpStatus status = getStatus(error);
+        if (status == null) {
+            return Mono.error(error);
+        }
+
+        return ServerResponse.status(status).bodyValue(new ErrorResponse(error.getMessage()));
+    }
+
+    private static HttpStatus getStatus(Throwable error) {
+        if (error instanceof WidgetNotFoundException || error instanceof NotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+
+        if (error instanceof InvalidPageSizeException || error instanceof InvalidSortException
+                || error instanceof InvalidTileException || error instanceof InvalidImportException
+                || error instanceof InvalidHistoryStepsException || error instanceof InvalidZRangeException
+                || error instanceof InvalidParentException) {
+            return HttpStatus.UNPROCESSABLE_ENTITY;
+        }
+
+        if (error instanceof BoardVersionNotFoundException) {
+            return HttpStatus.GONE;
+        }
+
+        if (error instanceof ReadOnlyReplicaException) {
+            return HttpStatus.METHOD_NOT_ALLOWED;
+        }
+
+        if (error instanceof StaleReplicaException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,365 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.exception.BoardVersionNotFoundException;
+import com.miro.board.exception.InvalidImportException;
+import com.miro.board.exception.InvalidZRangeException;
+import com.miro.board.exception.WidgetNotFoundException;
+import com.miro.board.widget.WidgetController;
+import com.miro.board.widget.WidgetReadCoalescer;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.WidgetTileService;
+import com.miro.board.widget.model.HitTestRequest;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetMoveRequest;
+import com.miro.board.widget.model.WidgetRequest;
+import com.miro.board.widget.model.WidgetScaleRequest;
+import com.miro.board.widget.model.WidgetSortField;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.codec.CodecException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.server.UnsupportedMediaTypeStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Serves the widget routes on the reactive stack, with the same parameters, validation and
+ * responses as the WidgetController.
+ *
+ * Event-loop threads never block: reads of an in-memory board are served on them straight from its
+ * immutable snapshots, and every write is queued to a single writer thread, where it may wait for
+ * the widget service lock or the database without holding up other connections. Reads of the SQL
+ * board run on the bounded elastic scheduler, and so do those of an in-memory board that can
+ * hibernate, as the first read after it did loads it back from its file. An import is read there too,
+ * as its body streams in, so a slow upload holds up neither the event loop nor the writer.
+ * */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class WidgetHandler {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType(WidgetController.NDJSON);
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int IMPORT_BATCH_SIZE = 256;
+
+    private final WidgetService widgetService;
+    private final WidgetReadCoalescer widgetReadCoalescer;
+    private final WidgetTileService widgetTileService;
+    private final Validator validator;
+    private final Scheduler readScheduler;
+    // Writes are serialized by the widget service anyway, so a single thread queues them at no cost
+    private final Scheduler writeScheduler = Schedulers.newSingle("widget-writer");
+
+    public WidgetHandler(WidgetService widgetService, WidgetReadCoalescer widgetReadCoalescer,
+                         WidgetTileService widgetTileService, Validator validator,
+                         @Value("${hibernation.idle-ms:0}") long hibernationIdleMillis) {
+        this.widgetService = widgetService;
+        this.widgetReadCoalescer = widgetReadCoalescer;
+        this.widgetTileService = widgetTileService;
+        this.validator = validator;
+        readScheduler = widgetService.isServedFromMemory() && hibernationIdleMillis <= 0 ? Schedulers.immediate() : Schedulers.boundedElastic();
+    }
+
+    @PreDestroy
+    public void stop() {
+        writeScheduler.dispose();
+    }
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        return body(request, WidgetRequest.class)
+                .flatMap(body -> write(() -> widgetService.create(body)))
+                .flatMap(widget -> ServerResponse.status(HttpStatus.CREATED).bodyValue(widget));
+    }
+
+    public Mono<ServerResponse> move(ServerRequest request) {
+        return body(request, WidgetMoveRequest.class)
+                .flatMap(body -> write(() -> widgetService.move(body)))
+                .flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> scale(ServerRequest request) {
+        return body(request, WidgetScaleRequest.class)
+                .flatMap(body -> write(() -> widgetService.scale(body)))
+                .flatMap(this::ok);
+    }
+
+    // One widget per line, in z order, streamed from a single version of the board
+    public Mono<ServerResponse> exportAll(ServerRequest request) {
+        Flux<Widget> widgets = Flux.fromStream(widgetService::streamAll).subscribeOn(readScheduler);
+        return ServerResponse.ok().contentType(NDJSON).body(widgets, Widget.class);
+    }
+
+    public Mono<ServerResponse> importAll(ServerRequest request) {
+        Optional<MediaType> contentType = request.headers().contentType();
+        if (contentType.isEmpty() || !NDJSON.isCompatibleWith(contentType.get())) {
+            return Mono.error(new UnsupportedMediaTypeStatusException(contentType.orElse(null), Collections.singletonList(NDJSON)));
+        }
+
+        AtomicLong lines = new AtomicLong();
+        Flux<Widget> body = request.bodyToFlux(Widget.class).doOnNext(widget -> lines.incrementAndGet());
+
+        // The widgets are handed to the service as they are decoded, a batch being requested from the
+        // body as the previous one is read, and the body is cancelled if the import fails early
+        return Mono.fromCallable(() -> {
+                    try (Stream<Widget> widgets = body.toStream(IMPORT_BATCH_SIZE)) {
+                        Iterator<Widget> iterator = widgets.iterator();
+                        return widgetService.importAll(() -> iterator.hasNext() ? iterator.next() : null);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(error -> error instanceof ServerWebInputException || error instanceof CodecException,
+                        error -> new InvalidImportException(lines.get() + 1, getMostSpecificMessage(error)))
+                .then(ServerResponse.noContent().build());
+    }
+
+    public Mono<ServerResponse> undo(ServerRequest request) {
+        int steps = stepsQueryParam(request);
+        return write(() -> widgetService.undo(steps)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> redo(ServerRequest request) {
+        int steps = stepsQueryParam(request);
+        return write(() -> widgetService.redo(steps)).flatMap(this::ok);
+    }
+
+    // Read under the widget service lock, so it is queued with the writes
+    public Mono<ServerResponse> getHistory(ServerRequest request) {
+        return write(widgetService::getHistory).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+
+        return body(request, WidgetRequest.class)
+                .flatMap(body -> write(() -> widgetService.update(id, body)))
+                .flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> moveToFront(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+        return write(() -> widgetService.moveToFront(id)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> moveToBack(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+        return write(() -> widgetService.moveToBack(id)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> moveAbove(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+        Long otherId = longPathVariable(request, "otherId");
+        return write(() -> widgetService.moveAbove(id, otherId)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> moveBelow(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+        Long otherId = longPathVariable(request, "otherId");
+        return write(() -> widgetService.moveBelow(id, otherId)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+        return write(() -> widgetService.delete(id)).flatMap(this::ok);
+    }
+
+    // Concurrent identical reads share a single read and serialization
+    public Mono<ServerResponse> get(ServerRequest request) {
+        Long id = longPathVariable(request, "id");
+
+        return read(() -> widgetReadCoalescer.get(id))
+                .flatMap(Mono::fromFuture)
+                .flatMap(widget -> widget.map(this::okJson).orElseGet(() -> Mono.error(new WidgetNotFoundException())));
+    }
+
+    public Mono<ServerResponse> getAt(ServerRequest request) {
+        int x = intQueryParam(request, "x");
+        int y = intQueryParam(request, "y");
+        return read(() -> widgetService.getAt(x, y)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> getAtPoints(ServerRequest request) {
+        return body(request, HitTestRequest.class)
+                .flatMap(body -> read(() -> widgetService.getAt(body.getPoints())))
+                .flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> getTile(ServerRequest request) {
+        int zoom = parseInt("zoom", request.pathVariable("zoom"));
+        long x = longPathVariable(request, "x");
+        long y = longPathVariable(request, "y");
+        return read(() -> widgetTileService.getTile(zoom, x, y)).flatMap(this::ok);
+    }
+
+    public Mono<ServerResponse> count(ServerRequest request) {
+        int zFrom = zQueryParam(request, "zFrom", Integer.MIN_VALUE);
+        int zTo = zQueryParam(request, "zTo", Integer.MAX_VALUE);
+        return read(() -> widgetService.countInZRange(zFrom, zTo)).flatMap(this::ok);
+    }
+
+    // The board as it is drawn, each top-level widget followed by the widgets of its frame at their position on the board
+    public Mono<ServerResponse> getAllStacked(ServerRequest request) {
+        Pageable pageable = getPageable(request);
+        return read(() -> widgetService.getAllInStackingOrder(pageable)).flatMap(this::ok);
+    }
+
+    // Takes the widget service lock for a moment to match the changes to the version returned, so it may
+    // block, but it is not queued behind the writes as a resync reads the whole board
+    public Mono<ServerResponse> getChanges(ServerRequest request) {
+        Long since = request.queryParam("since").map(value -> parseLong("since", value)).orElse(null);
+        return Mono.fromCallable(() -> widgetService.getChanges(since)).subscribeOn(Schedulers.boundedElastic()).flatMap(this::ok);
+    }
+
+    // The board version read is returned in a header; passing it back reads the next pages from the same version.
+    // Passing zFrom or zTo instead pages through the widgets within that z range of the current board.
+    public Mono<ServerResponse> getAll(ServerRequest request) {
+        Pageable pageable = getPageable(request);
+        Long version = request.queryParam("version").map(value -> parseLong("version", value)).orElse(null);
+
+        if (request.queryParam("zFrom").isPresent() || request.queryParam("zTo").isPresent()) {
+            if (version != null) {
+                return Mono.error(new InvalidZRangeException("A z range is read from the current board and cannot be read at a version"));
+            }
+
+            int zFrom = zQueryParam(request, "zFrom", Integer.MIN_VALUE);
+            int zTo = zQueryParam(request, "zTo", Integer.MAX_VALUE);
+            return read(() -> widgetService.getAllInZRange(zFrom, zTo, pageable)).flatMap(this::ok);
+        }
+
+        return read(() -> widgetReadCoalescer.getAll(pageable, version)).flatMap(page -> Mono.fromFuture(page.getBody())
+                .flatMap(body -> body.map(Mono::just).orElseGet(() -> Mono.error(new BoardVersionNotFoundException(page.getVersion()))))
+                .flatMap(body -> {
+                    ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+
+                    if (page.getVersion() != null) {
+                        response.header(WidgetController.BOARD_VERSION_HEADER, String.valueOf(page.getVersion()));
+                    }
+
+                    return response.bodyValue(body);
+                }));
+    }
+
+    private <T> Mono<T> read(Callable<T> read) {
+        return Mono.fromCallable(read).subscribeOn(readScheduler);
+    }
+
+    private <T> Mono<T> write(Callable<T> write) {
+        return Mono.fromCallable(write).subscribeOn(writeScheduler);
+    }
+
+    private Mono<ServerResponse> ok(Object body) {
+        return ServerResponse.ok().bodyValue(body);
+    }
+
+    private Mono<ServerResponse> okJson(byte[] body) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+
+    private <T> Mono<T> body(ServerRequest request, Class<T> type) {
+        return request.bodyToMono(type)
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Request body is missing")))
+                .flatMap(body -> {
+                    Set<ConstraintViolation<T>> violations = validator.validate(body);
+                    return violations.isEmpty() ? Mono.just(body) : Mono.error(new RequestValidationException(violations));
+                });
+    }
+
+    // Same defaults as the servlet stack: the first page of 10 widgets sorted by z
+    private static Pageable getPageable(ServerRequest request) {
+        int page = request.queryParam("page").map(value -> parseInt("page", value)).orElse(0);
+        int size = request.queryParam("size").map(value -> parseInt("size", value)).orElse(DEFAULT_PAGE_SIZE);
+
+        List<Sort.Order> orders = new ArrayList<>();
+        request.queryParams().getOrDefault("sort", Collections.emptyList()).forEach(sort -> orders.addAll(parseSort(sort)));
+
+        return PageRequest.of(
+                Math.max(page, 0),
+                size < 1 ? DEFAULT_PAGE_SIZE : size,
+                orders.isEmpty() ? Sort.by(WidgetSortField.Z.getProperty()) : Sort.by(orders)
+        );
+    }
+
+    // "property,property,direction", the direction being optional
+    private static List<Sort.Order> parseSort(String sort) {
+        List<String> parts = new ArrayList<>(Arrays.asList(sort.split(",")));
+        parts.removeIf(String::isBlank);
+
+        if (parts.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Optional<Sort.Direction> direction = Sort.Direction.fromOptionalString(parts.get(parts.size() - 1));
+        if (direction.isPresent()) {
+            parts.remove(parts.size() - 1);
+        }
+
+        List<Sort.Order> orders = new ArrayList<>();
+        parts.forEach(property -> orders.add(new Sort.Order(direction.orElse(Sort.DEFAULT_DIRECTION), property)));
+        return orders;
+    }
+
+    private static long longPathVariable(ServerRequest request, String name) {
+        return parseLong(name, request.pathVariable(name));
+    }
+
+    private static int intQueryParam(ServerRequest request, String name) {
+        String value = request.queryParam(name)
+                .orElseThrow(() -> new ServerWebInputException("Required parameter '" + name + "' is not present"));
+        return parseInt(name, value);
+    }
+
+    private static int stepsQueryParam(ServerRequest request) {
+        return request.queryParam("steps").map(value -> parseInt("steps", value)).orElse(1);
+    }
+
+    // A bound left out leaves that end of the z range open
+    private static int zQueryParam(ServerRequest request, String name, int openBound) {
+        return request.queryParam(name).map(value -> parseInt(name, value)).orElse(openBound);
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid value '" + value + "' for '" + name + "'");
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid value '" + value + "' for '" + name + "'");
+        }
+    }
+
+    private static String getMostSpecificMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,309 @@
+package com.miro.board.widget.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Immutable AVL tree whose nodes know the size of their subtree. Every update copies only the path
+ * from the root to the changed node and shares the rest with the previous version, so keeping an
+ * old version of the tree costs O(log n) per update instead of a full copy, and elements can be
+ * read by position in O(log n).
+ *
+ * Elements comparing equal are considered the same element; inserting one replaces the other.
+ * */
+final class PersistentSortedTree<T> implements Iterable<T> {
+
+    private final Comparator<? super T> comparator;
+    private final Node<T> root;
+
+    private PersistentSortedTree(Comparator<? super T> comparator, Node<T> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    static <T> PersistentSortedTree<T> empty(Comparator<? super T> comparator) {
+        return new PersistentSortedTree<>(comparator, null);
+    }
+
+    // Builds a balanced tree in O(n) from elements already sorted by the comparator and without duplicates
+    static <T> PersistentSortedTree<T> fromSorted(Comparator<? super T> comparator, List<T> elements) {
+        return new PersistentSortedTree<>(comparator, build(elements, 0, elements.size()));
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    PersistentSortedTree<T> insert(T element) {
+        return new PersistentSortedTree<>(comparator, insert(root, element));
+    }
+
+    PersistentSortedTree<T> remove(T element) {
+        Node<T> newRoot = remove(root, element);
+        return newRoot == root ? this : new PersistentSortedTree<>(comparator, newRoot);
+    }
+
+    // The element comparing equal to the probe
+    Optional<T> find(T probe) {
+        Node<T> node = root;
+
+        while (node != null) {
+            int comparison = comparator.compare(probe, node.value);
+
+            if (comparison == 0) {
+                return Optional.of(node.value);
+            }
+
+            node = comparison < 0 ? node.left : node.right;
+        }
+
+        return Optional.empty();
+    }
+
+    T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        }
+
+        Node<T> node = root;
+
+        while (true) {
+            int leftSize = size(node.left);
+
+            if (index == leftSize) {
+                return node.value;
+            }
+
+            if (index < leftSize) {
+                node = node.left;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // Number of elements smaller than the probe
+    int rank(T probe) {
+        Node<T> node = root;
+        int rank = 0;
+
+        while (node != null) {
+            if (comparator.compare(probe, node.value) <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+
+        return rank;
+    }
+
+    Optional<T> last() {
+        return isEmpty() ? Optional.empty() : Optional.of(get(size() - 1));
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(0);
+    }
+
+    // Ascending iterator starting at the given position
+    Iterator<T> iterator(int fromIndex) {
+        return new TreeIterator<>(root, fromIndex, true);
+    }
+
+    // Descending iterator starting at the given position counted from the end
+    Iterator<T> descendingIterator(int fromIndexFromEnd) {
+        return new TreeIterator<>(root, fromIndexFromEnd, false);
+    }
+
+    List<T> toList() {
+        List<T> elements = new ArrayList<>(size());
+        forEach(elements::add);
+        return elements;
+    }
+
+    private Node<T> insert(Node<T> node, T element) {
+        if (node == null) {
+            return new Node<>(element, null, null);
+        }
+
+        int comparison = comparator.compare(element, node.value);
+
+        if (comparison == 0) {
+            return new Node<>(element, node.left, node.right);
+        }
+
+        return comparison < 0
+                ? balance(node.value, insert(node.left, element), node.right)
+                : balance(node.value, node.left, insert(node.right, element));
+    }
+
+    private Node<T> remove(Node<T> node, T element) {
+        if (node == null) {
+            return null;
+        }
+
+        int comparison = comparator.compare(element, node.value);
+
+        if (comparison < 0) {
+            Node<T> left = remove(node.left, element);
+            return left == node.left ? node : balance(node.value, left, node.right);
+        }
+
+        if (comparison > 0) {
+            Node<T> right = remove(node.right, element);
+            return right == node.right ? node : balance(node.value, node.left, right);
+        }
+
+        if (node.left == null) {
+            return node.right;
+        }
+
+        if (node.right == null) {
+            return node.left;
+        }
+
+        Node<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+
+        return balance(successor.value, node.left, removeFirst(node.right));
+    }
+
+    private Node<T> removeFirst(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+
+        return balance(node.value, removeFirst(node.left), node.right);
+    }
+
+    private static <T> Node<T> balance(T value, Node<T> left, Node<T> right) {
+        int difference = height(left) - height(right);
+
+        if (difference > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left.value, left.left, left.right);
+            }
+            return rotateRight(value, left, right);
+        }
+
+        if (difference < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right.value, right.left, right.right);
+            }
+            return rotateLeft(value, left, right);
+        }
+
+        return new Node<>(value, left, right);
+    }
+
+    private static <T> Node<T> rotateRight(T value, Node<T> left, Node<T> right) {
+        return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+    }
+
+    private static <T> Node<T> rotateLeft(T value, Node<T> left, Node<T> right) {
+        return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+    }
+
+    private static <T> Node<T> build(List<T> elements, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+
+        int middle = (from + to) >>> 1;
+        return new Node<>(elements.get(middle), build(elements, from, middle), build(elements, middle + 1, to));
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<T> {
+        private final T value;
+        private final Node<T> left;
+        private final Node<T> right;
+        private final int size;
+        private final int height;
+
+        Node(T value, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    // In-order traversal with an explicit stack, positioned in O(log n)
+    private static final class TreeIterator<T> implements Iterator<T> {
+        private final Deque<Node<T>> stack = new ArrayDeque<>();
+        private final boolean ascending;
+
+        TreeIterator(Node<T> root, int skip, boolean ascending) {
+            this.ascending = ascending;
+
+            Node<T> node = root;
+            while (node != null) {
+                Node<T> near = ascending ? node.left : node.right;
+                Node<T> far = ascending ? node.right : node.left;
+                int nearSize = size(near);
+
+                if (skip < nearSize) {
+                    stack.push(node);
+                    node = near;
+                } else {
+                    skip -= nearSize;
+
+                    if (skip == 0) {
+                        stack.push(node);
+                        return;
+                    }
+
+                    skip--;
+                    node = far;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Node<T> node = stack.pop();
+            Node<T> next = ascending ? node.right : node.left;
+
+            while (next != null) {
+                stack.push(next);
+                next = ascending ? next.left : next.right;
+            }
+
+            return node.value;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Operations on the whole board. For SQL they are implemented with plain JDBC in
+ * {@link WidgetBulkRepositoryImpl}, so no widget goes through the persistence context. Its statements
+ * are standard SQL but only run against H2: the export sorts with NULLS FIRST and the import restarts
+ * the id sequence Hibernate creates, so a database lacking either needs statements of its own.
+ * */
+public interface WidgetBulkRepository {
+
+    // Every widget as of a single version of the board: the top-level widgets in z order, then the
+    // widgets of each frame in z order. The stream must be closed.
+    Stream<Widget> streamAllByParentAndZ();
+
+    // Replaces every widget of the board, keeping their ids
+    void replaceAll(Collection<Widget> widgets);
+
+    // Saves the widget keeping its id, whether a widget with that id exists or not
+    Widget upsert(Widget widget);
+}
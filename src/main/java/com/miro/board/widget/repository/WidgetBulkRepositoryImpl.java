@@ -0,0 +1,119 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Picked up by Spring Data as the SQL implementation of WidgetBulkRepository
+class WidgetBulkRepositoryImpl implements WidgetBulkRepository {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_SQL = "SELECT id, last_modified, width, height, x, y, z, parent_id FROM widget ORDER BY parent_id NULLS FIRST, z";
+    private static final String INSERT_SQL = "INSERT INTO widget (id, last_modified, width, height, x, y, z, parent_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE widget SET last_modified = ?, width = ?, height = ?, x = ?, y = ?, z = ?, parent_id = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    WidgetBulkRepositoryImpl(JdbcTemplate jdbcTemplate, EntityManager entityManager) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Stream<Widget> streamAllByParentAndZ() {
+        return jdbcTemplate.queryForStream(SELECT_SQL, (resultSet, row) -> readWidget(resultSet));
+    }
+
+    @Override
+    public void replaceAll(Collection<Widget> widgets) {
+        jdbcTemplate.update("DELETE FROM widget");
+        jdbcTemplate.batchUpdate(INSERT_SQL, widgets, BATCH_SIZE, WidgetBulkRepositoryImpl::setWidget);
+
+        // Ids generated from now on must not collide with the ones inserted. Restarting a sequence is
+        // standard SQL, but the sequence is the one Hibernate creates on databases that have them, as H2
+        long nextId = widgets.stream().mapToLong(Widget::getId).max().orElse(0) + 1;
+        jdbcTemplate.execute("ALTER SEQUENCE hibernate_sequence RESTART WITH " + nextId);
+    }
+
+    // Written around the persistence context, which is flushed first so the pending writes come before
+    // this one, and cleared after so no widget it manages is stale. An update falling back to an insert
+    // rather than a MERGE, whose syntax differs between databases; both run under the widget service
+    // lock, so no other insert of the id comes in between.
+    @Override
+    public Widget upsert(Widget widget) {
+        entityManager.flush();
+        upsertAll(jdbcTemplate, List.of(widget), 1);
+        entityManager.clear();
+        return widget;
+    }
+
+    // Updates the widgets in batches, then inserts in batches those no row was updated for. Shared with
+    // the write-behind of the tiered repository, so both write the board with the same statements.
+    static void upsertAll(JdbcTemplate jdbcTemplate, List<Widget> widgets, int batchSize) {
+        int[][] updatedRows = jdbcTemplate.batchUpdate(UPDATE_SQL, widgets, batchSize, WidgetBulkRepositoryImpl::setUpdatedWidget);
+        List<Widget> widgetsToInsert = new ArrayList<>();
+        int index = 0;
+
+        for (int[] batch : updatedRows) {
+            for (int rows : batch) {
+                if (rows == 0) {
+                    widgetsToInsert.add(widgets.get(index));
+                }
+                index++;
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, widgetsToInsert, batchSize, WidgetBulkRepositoryImpl::setWidget);
+    }
+
+    private static void setWidget(PreparedStatement statement, Widget widget) throws SQLException {
+        statement.setLong(1, widget.getId());
+        statement.setTimestamp(2, widget.getLastModified() == null ? null : Timestamp.valueOf(widget.getLastModified()));
+        statement.setInt(3, widget.getWidth());
+        statement.setInt(4, widget.getHeight());
+        statement.setInt(5, widget.getX());
+        statement.setInt(6, widget.getY());
+        statement.setInt(7, widget.getZ());
+        statement.setObject(8, widget.getParentId(), Types.BIGINT);
+    }
+
+    private static void setUpdatedWidget(PreparedStatement statement, Widget widget) throws SQLException {
+        statement.setTimestamp(1, widget.getLastModified() == null ? null : Timestamp.valueOf(widget.getLastModified()));
+        statement.setInt(2, widget.getWidth());
+        statement.setInt(3, widget.getHeight());
+        statement.setInt(4, widget.getX());
+        statement.setInt(5, widget.getY());
+        statement.setInt(6, widget.getZ());
+        statement.setObject(7, widget.getParentId(), Types.BIGINT);
+        statement.setLong(8, widget.getId());
+    }
+
+    private static Widget readWidget(ResultSet resultSet) throws SQLException {
+        Timestamp lastModified = resultSet.getTimestamp("last_modified");
+
+        return Widget.builder()
+                .id(resultSet.getLong("id"))
+                .lastModified(lastModified == null ? null : lastModified.toLocalDateTime())
+                .width(resultSet.getInt("width"))
+                .height(resultSet.getInt("height"))
+                .x(resultSet.getInt("x"))
+                .y(resultSet.getInt("y"))
+                .z(resultSet.getInt("z"))
+                .parentId(resultSet.getObject("parent_id", Long.class))
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * File a hibernating board is kept in. A header holds the version of the board and the number of
+ * widgets, followed by the widgets grouped by frame and in z order as deflated fixed-length records:
+ * the id, the last modification as seconds and nanoseconds since the epoch in UTC, the size, the
+ * position, the z-index and the id of the frame, 0 for a top-level widget.
+ *
+ * The file is written aside and moved into place, so a board is never read from a partial file, and
+ * read through a memory mapping, inflating the records straight from the mapped pages.
+ * */
+final class WidgetHibernationFile {
+
+    private static final int MAGIC = 0x57424831;
+    private static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int RECORD_LENGTH = 2 * Long.BYTES + Integer.BYTES + 5 * Integer.BYTES + Long.BYTES;
+    private static final int RECORDS_PER_CHUNK = 4096;
+    private static final long NO_LAST_MODIFIED = Long.MIN_VALUE;
+    private static final long NO_PARENT = 0;
+
+    private WidgetHibernationFile() {
+    }
+
+    static void write(Path file, WidgetSnapshot snapshot) throws IOException {
+        Path partialFile = file.resolveSibling(file.getFileName() + ".partial");
+
+        try (OutputStream output = Files.newOutputStream(partialFile)) {
+            DataOutputStream header = new DataOutputStream(output);
+            header.writeInt(MAGIC);
+            header.writeLong(snapshot.getVersion());
+            header.writeInt(snapshot.size());
+            header.flush();
+
+            DataOutputStream records = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(output)));
+            for (Widget widget : snapshot.sortedByParent()) {
+                LocalDateTime lastModified = widget.getLastModified();
+
+                records.writeLong(widget.getId());
+                records.writeLong(lastModified == null ? NO_LAST_MODIFIED : lastModified.toEpochSecond(ZoneOffset.UTC));
+                records.writeInt(lastModified == null ? 0 : lastModified.getNano());
+                records.writeInt(widget.getWidth());
+                records.writeInt(widget.getHeight());
+                records.writeInt(widget.getX());
+                records.writeInt(widget.getY());
+                records.writeInt(widget.getZ());
+                records.writeLong(widget.getParentId() == null ? NO_PARENT : widget.getParentId());
+            }
+            records.close();
+        }
+
+        Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static WidgetSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a hibernated board");
+            }
+
+            long version = buffer.getLong();
+            int count = buffer.getInt();
+            List<Widget> widgets = new ArrayList<>(count);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer);
+                ByteBuffer records = ByteBuffer.allocate(RECORD_LENGTH * RECORDS_PER_CHUNK);
+
+                while (widgets.size() < count) {
+                    int length = (int) Math.min(records.capacity(), (long) (count - widgets.size()) * RECORD_LENGTH);
+                    inflateFully(inflater, records.array(), length, file);
+
+                    for (int offset = 0; offset < length; offset += RECORD_LENGTH) {
+                        widgets.add(readWidget(records, offset));
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+
+            return WidgetSnapshot.of(widgets).withVersion(version);
+        }
+    }
+
+    private static void inflateFully(Inflater inflater, byte[] records, int length, Path file) throws IOException {
+        try {
+            for (int inflated = 0; inflated < length; ) {
+                int read = inflater.inflate(records, inflated, length - inflated);
+
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException(file + " is truncated");
+                }
+
+                inflated += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(file + " is corrupted", e);
+        }
+    }
+
+    private static Widget readWidget(ByteBuffer records, int offset) {
+        long seconds = records.getLong(offset + 8);
+        long parentId = records.getLong(offset + 40);
+
+        return Widget.builder()
+                .id(records.getLong(offset))
+                .lastModified(seconds == NO_LAST_MODIFIED ? null : LocalDateTime.ofEpochSecond(seconds, records.getInt(offset + 16), ZoneOffset.UTC))
+                .width(records.getInt(offset + 20))
+                .height(records.getInt(offset + 24))
+                .x(records.getInt(offset + 28))
+                .y(records.getInt(offset + 32))
+                .z(records.getInt(offset + 36))
+                .parentId(parentId == NO_PARENT ? null : parentId)
+                .build();
+    }
+}
@@ -1,149 +1,697 @@
 package com.miro.board.widget.repository;
 
 import com.miro.board.exception.NotFoundException;
+import com.miro.board.profiling.CacheUpdateEvent;
 import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetSortField;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.NavigableSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
  * In-memory implementation of WidgetRepository. A cache is used to allow concurrent reads to the
  * set of widgets without being affected by updating the original set. The cache is refreshed after
  * a write operation to the set.
+ *
+ * The widgets are kept in persistent trees, ordered by id and by every sortable field, so a write
+ * only copies the paths it changes and refreshing the cache just publishes the new version. Every
+ * published version has a number; versions handed out to clients are retained for a while so they
+ * can keep paging through the same board while it changes. Hit tests are answered by a spatial index
+ * that is updated in place and safe to read concurrently.
+ *
+ * The widgets are also kept grouped by frame, top-level widgets first, each group in z order. Every
+ * z-index operation is scoped to a group, whose ends are found by rank, so it costs O(log n) plus
+ * the widgets it reads whatever the size of the other groups.
+ *
+ * An idle board can hibernate: it is written to a compressed file and every structure holding it is
+ * released, to be loaded back from the file by the next read or write. Accesses only read a volatile
+ * field and set a flag the first time, so a board that is being used pays next to nothing for it.
  * */
 @Repository("InMemoryRepository")
 public class WidgetInMemoryRepository implements WidgetRepository {
 
-    private final NavigableSet<Widget> widgets = new TreeSet<>(Comparator.comparing(Widget::getZ));
-    private Set<Widget> cache = Collections.emptySet();
+    private static final Logger LOG = LoggerFactory.getLogger(WidgetInMemoryRepository.class);
+
+    private static final long DEFAULT_SNAPSHOT_RETENTION_MILLIS = 60_000;
+
+    // Null, like the snapshots, while the board is hibernating
+    private volatile WidgetSpatialIndex spatialIndex = new WidgetSpatialIndex();
+    private final Map<Long, RetainedSnapshot> retainedSnapshots = new ConcurrentHashMap<>();
+    private final long snapshotRetentionMillis;
+
+    private WidgetSnapshot widgets = WidgetSnapshot.empty();
+    private volatile WidgetSnapshot cache = widgets;
 
     private long lastId = 1;
 
+    private final Object hibernationLock = new Object();
+    private Path hibernationFile;
+    private Timer wakeTimer;
+    // Whether the board was read or written since the last poll
+    private volatile boolean accessed;
+
+    public WidgetInMemoryRepository() {
+        this(DEFAULT_SNAPSHOT_RETENTION_MILLIS);
+    }
+
+    @Autowired
+    public WidgetInMemoryRepository(@Value("${snapshot-retention-ms}") long snapshotRetentionMillis) {
+        this.snapshotRetentionMillis = snapshotRetentionMillis;
+    }
+
     @Override
     public Optional<Widget> findById(Long id) {
-        return findWidgetInCache(id);
+        return currentSnapshot().findById(id);
+    }
+
+    // Widgets that do not exist are left out
+    @Override
+    public Iterable<Widget> findAllById(Iterable<Long> ids) {
+        WidgetSnapshot snapshot = currentSnapshot();
+        List<Widget> foundWidgets = new ArrayList<>();
+
+        for (Long id : ids) {
+            snapshot.findById(id).ifPresent(foundWidgets::add);
+        }
+
+        return foundWidgets;
     }
 
     @Override
     public Page<Widget> findAll(Pageable pageable) {
-        int pageSize = pageable.getPageSize();
-        int offset = (int) pageable.getOffset();
+        return findAll(currentSnapshot(), pageable);
+    }
+
+    @Override
+    public OptionalLong getCurrentVersion() {
+        return OptionalLong.of(currentSnapshot().getVersion());
+    }
+
+    @Override
+    public OptionalLong retainCurrentVersion() {
+        WidgetSnapshot snapshot = currentSnapshot();
+        retainedSnapshots.computeIfAbsent(snapshot.getVersion(), version -> new RetainedSnapshot(snapshot)).touch();
+        evictExpiredSnapshots();
+        return OptionalLong.of(snapshot.getVersion());
+    }
+
+    @Override
+    public Optional<Page<Widget>> findAllAtVersion(Pageable pageable, long version) {
+        WidgetSnapshot snapshot = currentSnapshot();
 
-        if (cache.size() < offset) {
-            return new PageImpl<>(Collections.emptyList(), pageable, cache.size());
+        if (snapshot.getVersion() != version) {
+            RetainedSnapshot retainedSnapshot = retainedSnapshots.get(version);
+
+            if (retainedSnapshot == null || retainedSnapshot.isExpired()) {
+                return Optional.empty();
+            }
+
+            snapshot = retainedSnapshot.touch();
+        }
+
+        return Optional.of(findAll(snapshot, pageable));
+    }
+
+    // Both ends of the range are found by rank, so a page costs O(log n) plus its size
+    @Override
+    public Page<Widget> findAllByParentIdIsNullAndZBetween(int zFrom, int zTo, Pageable pageable) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        int from = rankOfZIndex(widgetsByParent, null, zFrom);
+        int to = Math.max(from, rankAfterZIndex(widgetsByParent, null, zTo));
+
+        Sort.Order order = pageable.getSort().getOrderFor(WidgetSortField.Z.getProperty());
+        boolean ascending = order == null || order.isAscending();
+        int count = to - from;
+        int offset = (int) Math.min(pageable.getOffset(), count);
+        int pageEnd = (int) Math.min(count, (long) offset + pageable.getPageSize());
+
+        Iterator<Widget> iterator = ascending
+                ? widgetsByParent.iterator(from + offset)
+                : widgetsByParent.descendingIterator(widgetsByParent.size() - to + offset);
+        List<Widget> widgetSublist = new ArrayList<>(pageEnd - offset);
+
+        for (int i = offset; i < pageEnd; i++) {
+            widgetSublist.add(iterator.next());
+        }
+
+        return new PageImpl<>(widgetSublist, pageable, count);
+    }
+
+    @Override
+    public long countByParentIdIsNullAndZBetween(int zFrom, int zTo) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        return Math.max(0, rankAfterZIndex(widgetsByParent, null, zTo) - rankOfZIndex(widgetsByParent, null, zFrom));
+    }
+
+    // The groups before the offset are skipped by rank, so a page costs O(log n) per frame before it
+    // plus its size
+    @Override
+    public Page<Widget> findAllInStackingOrder(Pageable pageable) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        int topLevelWidgets = rankAfterZIndex(widgetsByParent, null, Integer.MAX_VALUE);
+        long skipped = 0;
+        List<Widget> widgetSublist = new ArrayList<>();
+        Iterator<Widget> topLevelIterator = widgetsByParent.iterator(0);
+
+        for (int i = 0; i < topLevelWidgets && widgetSublist.size() < pageable.getPageSize(); i++) {
+            Widget frame = topLevelIterator.next();
+            int from = rankOfZIndex(widgetsByParent, frame.getId(), Integer.MIN_VALUE);
+            int to = rankAfterZIndex(widgetsByParent, frame.getId(), Integer.MAX_VALUE);
+            long groupSize = 1 + to - from;
+
+            if (skipped + groupSize <= pageable.getOffset()) {
+                skipped += groupSize;
+                continue;
+            }
+
+            if (skipped >= pageable.getOffset()) {
+                widgetSublist.add(frame);
+            }
+
+            // Where the page starts within the group, the frame itself being its first widget
+            int childOffset = (int) Math.max(0, pageable.getOffset() - skipped - 1);
+            Iterator<Widget> children = widgetsByParent.iterator(from + childOffset);
+
+            for (int child = from + childOffset; child < to && widgetSublist.size() < pageable.getPageSize(); child++) {
+                widgetSublist.add(children.next());
+            }
+
+            skipped += groupSize;
         }
 
-        int lastPageItem = Math.min(cache.size(), offset + pageSize);
+        return new PageImpl<>(widgetSublist, pageable, widgetsByParent.size());
+    }
+
+    @Override
+    public List<Widget> findAllContainingPoint(int x, int y, Pageable pageable) {
+        return currentSpatialIndex().findContaining(x, y, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public List<Widget> findAllIntersecting(int minX, int minY, int maxX, int maxY, int minSize) {
+        Collection<Widget> candidates = intersectionCandidates(minX, minY, maxX, maxY);
+
+        return candidates.stream()
+                .filter(widget -> WidgetSpatialIndex.intersects(widget, minX, minY, maxX, maxY))
+                .filter(widget -> widget.getWidth() >= minSize || widget.getHeight() >= minSize)
+                .sorted(WidgetSortField.Z.getComparator())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long countIntersecting(int minX, int minY, int maxX, int maxY) {
+        return intersectionCandidates(minX, minY, maxX, maxY).stream()
+                .filter(widget -> WidgetSpatialIndex.intersects(widget, minX, minY, maxX, maxY))
+                .count();
+    }
+
+    @Override
+    public int getMaxZIndex(Long parentId) {
+        wakeForWrite();
+        PersistentSortedTree<Widget> widgetsByParent = widgets.sortedByParent();
+        int from = rankOfZIndex(widgetsByParent, parentId, Integer.MIN_VALUE);
+        int to = rankAfterZIndex(widgetsByParent, parentId, Integer.MAX_VALUE);
+        return to > from ? widgetsByParent.get(to - 1).getZ() : 0;
+    }
+
+    @Override
+    public int getMinZIndex(Long parentId) {
+        wakeForWrite();
+        PersistentSortedTree<Widget> widgetsByParent = widgets.sortedByParent();
+        int from = rankOfZIndex(widgetsByParent, parentId, Integer.MIN_VALUE);
+        return isAtZIndex(widgetsByParent, from, parentId, null) ? widgetsByParent.get(from).getZ() : 0;
+    }
 
-        List<Widget> widgetSublist = new ArrayList<>(cache).subList(offset, lastPageItem);
+    @Override
+    public Optional<Widget> findByParentIdAndZ(Long parentId, int z) {
+        wakeForWrite();
+        PersistentSortedTree<Widget> widgetsByParent = widgets.sortedByParent();
+        int index = rankOfZIndex(widgetsByParent, parentId, z);
 
-        return new PageImpl<>(widgetSublist, pageable, cache.size());
+        return isAtZIndex(widgetsByParent, index, parentId, z) ? Optional.of(widgetsByParent.get(index)) : Optional.empty();
     }
 
     @Override
-    public int getMaxZIndex() {
-        if (widgets.isEmpty()) {
-            return 0;
+    public List<Widget> findAllByParentIdOrderByZ(Long parentId) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        int from = rankOfZIndex(widgetsByParent, parentId, Integer.MIN_VALUE);
+        int to = rankAfterZIndex(widgetsByParent, parentId, Integer.MAX_VALUE);
+        Iterator<Widget> iterator = widgetsByParent.iterator(from);
+        List<Widget> children = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++) {
+            children.add(iterator.next());
         }
 
-        return widgets.last().getZ();
+        return children;
+    }
+
+    @Override
+    public boolean existsByParentId(Long parentId) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        return isAtZIndex(widgetsByParent, rankOfZIndex(widgetsByParent, parentId, Integer.MIN_VALUE), parentId, null);
     }
 
     @Override
     public Widget save(Widget widget) {
+        wakeForWrite();
+        Widget widgetToUpdate = null;
+
         // Create new widget if id is not present, otherwise update existing one
         if (widget.getId() == null) {
             widget.setId(getNextId());
         } else {
+            widgetToUpdate = findWidget(widget.getId()).orElseThrow(() -> new NotFoundException("Widget was not found."));
+            widgets = widgets.remove(widgetToUpdate);
+        }
+
+        widgets = widgets.add(widget);
+        spatialIndex.replace(widgetToUpdate, widget);
+        updateCache();
+        return widget;
+    }
+
+    // Updates existing widgets publishing a single new version of the board
+    @Override
+    public <S extends Widget> Iterable<S> saveAll(Iterable<S> widgetsToSave) {
+        wakeForWrite();
+        for (Widget widget : widgetsToSave) {
             Widget widgetToUpdate = findWidget(widget.getId()).orElseThrow(() -> new NotFoundException("Widget was not found."));
-            widgets.remove(widgetToUpdate);
+            widgets = widgets.remove(widgetToUpdate).add(widget);
+            spatialIndex.replace(widgetToUpdate, widget);
+        }
+
+        updateCache();
+        return widgetsToSave;
+    }
+
+    @Override
+    public Widget upsert(Widget widget) {
+        wakeForWrite();
+        Widget widgetToUpdate = findWidget(widget.getId()).orElse(null);
+
+        if (widgetToUpdate != null) {
+            widgets = widgets.remove(widgetToUpdate);
         }
 
-        widgets.add(widget);
+        widgets = widgets.add(widget);
+        spatialIndex.replace(widgetToUpdate, widget);
+        reserveId(widget.getId());
         updateCache();
         return widget;
     }
 
+    // The new board is built aside and published at once, so readers see either board but never a mix
+    @Override
+    public void replaceAll(Collection<Widget> newWidgets) {
+        wakeForWrite();
+        WidgetSpatialIndex newSpatialIndex = new WidgetSpatialIndex();
+
+        for (Widget widget : newWidgets) {
+            newSpatialIndex.add(widget);
+            reserveId(widget.getId());
+        }
+
+        widgets = WidgetSnapshot.of(newWidgets);
+        spatialIndex = newSpatialIndex;
+        updateCache();
+    }
+
+    @Override
+    public Stream<Widget> streamAllByParentAndZ() {
+        return StreamSupport.stream(currentSnapshot().sortedByParent().spliterator(), false);
+    }
+
     @Override
     public void delete(Widget widget) {
-        widgets.remove(widget);
+        wakeForWrite();
+        widgets = widgets.remove(widget);
+        spatialIndex.remove(widget);
         updateCache();
     }
 
     @Override
-    public Collection<Widget> getWidgetsFromZIndex(int zIndex) {
-        return widgets.tailSet(Widget.builder().z(zIndex).build(), true);
+    public List<Long> getZIndexRun(Long parentId, int zIndex, Long excludedId) {
+        wakeForWrite();
+        PersistentSortedTree<Widget> widgetsByParent = widgets.sortedByParent();
+        Iterator<Widget> iterator = widgetsByParent.iterator(rankOfZIndex(widgetsByParent, parentId, zIndex));
+        List<Long> ids = new ArrayList<>();
+
+        while (iterator.hasNext()) {
+            Widget widget = iterator.next();
+
+            if (!Objects.equals(widget.getParentId(), parentId) || widget.getZ() != zIndex + ids.size()
+                    || widget.getId().equals(excludedId)) {
+                break;
+            }
+
+            ids.add(widget.getId());
+        }
+
+        return ids;
+    }
+
+    // The run is found again by rank, and shifted like any other widgets
+    @Override
+    public void increaseZIndexRun(Long parentId, int zFrom, int zTo) {
+        wakeForWrite();
+        PersistentSortedTree<Widget> widgetsByParent = widgets.sortedByParent();
+        int from = rankOfZIndex(widgetsByParent, parentId, zFrom);
+        int to = rankAfterZIndex(widgetsByParent, parentId, zTo);
+        Iterator<Widget> iterator = widgetsByParent.iterator(from);
+        List<Long> ids = new ArrayList<>(Math.max(0, to - from));
+
+        for (int i = from; i < to; i++) {
+            ids.add(iterator.next().getId());
+        }
+
+        increaseZIndex(ids);
     }
 
+    // Published right away, as a replicated or redone shift may not be followed by the save that caused
+    // it for a while. Until that save, readers see the slot it makes room for empty, or, when the widget
+    // being updated is moved down into the run, sharing its z-index with the widget shifted up to it.
     @Override
     public void increaseZIndex(List<Long> widgetIds) {
+        wakeForWrite();
+        shiftZIndex(widgetIds, 1);
+        updateCache();
+    }
+
+    // Undoes an increase, after which nothing else is saved, so the new version is published right away
+    @Override
+    public void decreaseZIndex(List<Long> widgetIds) {
+        wakeForWrite();
+        shiftZIndex(widgetIds, -1);
+        updateCache();
+    }
+
+    private void shiftZIndex(List<Long> widgetIds, int shift) {
         if (widgetIds.isEmpty()) {
             return;
         }
 
-        List<Widget> widgetsToUpdate = widgets.stream().filter(widget -> widgetIds.contains(widget.getId())).collect(Collectors.toList());
+        List<Widget> widgetsToUpdate = widgetIds.stream()
+                .map(this::findWidget)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toList());
 
         List<Widget> updatedWidgets = widgetsToUpdate
                 .stream()
                 .map(widget -> Widget.builder()
                         .id(widget.getId())
+                        .parentId(widget.getParentId())
                         .lastModified(widget.getLastModified())
                         .width(widget.getWidth())
                         .height(widget.getHeight())
                         .x(widget.getX())
                         .y(widget.getY())
-                        .z(widget.getZ() + 1)
+                        .z(widget.getZ() + shift)
                         .build())
                 .collect(Collectors.toList());
 
-        widgets.removeAll(widgetsToUpdate);
-        widgets.addAll(updatedWidgets);
+        for (Widget widget : widgetsToUpdate) {
+            widgets = widgets.remove(widget);
+        }
+
+        for (Widget widget : updatedWidgets) {
+            widgets = widgets.add(widget);
+        }
+
+        for (int i = 0; i < widgetsToUpdate.size(); i++) {
+            spatialIndex.replace(widgetsToUpdate.get(i), updatedWidgets.get(i));
+        }
+    }
+
+    /**
+     * Writes the board to the file and releases it from the heap until its next access, unless a
+     * version of it is retained for clients paging through it. Writes must be held off meanwhile.
+     * The wake timer records how long loading the board back takes.
+     * */
+    public boolean hibernate(Path file, Timer wakeTimer) throws IOException {
+        synchronized (hibernationLock) {
+            evictExpiredSnapshots();
+
+            if (cache == null || !retainedSnapshots.isEmpty()) {
+                return false;
+            }
+
+            WidgetHibernationFile.write(file, widgets);
+            hibernationFile = file;
+            this.wakeTimer = wakeTimer;
+
+            spatialIndex = null;
+            cache = null;
+            widgets = null;
+            return true;
+        }
+    }
+
+    public boolean isHibernating() {
+        return cache == null;
+    }
+
+    // Whether the board was read or written since the last call
+    public boolean pollAccessed() {
+        boolean wasAccessed = accessed;
+        accessed = false;
+        return wasAccessed;
+    }
+
+    // The published version of the board, loaded back first if it is hibernating
+    private WidgetSnapshot currentSnapshot() {
+        WidgetSnapshot snapshot = cache;
+
+        if (snapshot == null) {
+            snapshot = wake();
+        }
+
+        markAccessed();
+        return snapshot;
+    }
+
+    private WidgetSpatialIndex currentSpatialIndex() {
+        WidgetSpatialIndex index;
+
+        // The board may hibernate again in between, however unlikely
+        while ((index = spatialIndex) == null) {
+            wake();
+        }
+
+        markAccessed();
+        return index;
+    }
+
+    // Writers are held off while the board hibernates, so once awake it stays so until they are done
+    private void wakeForWrite() {
+        if (cache == null) {
+            wake();
+        }
+
+        markAccessed();
+    }
+
+    private WidgetSnapshot wake() {
+        synchronized (hibernationLock) {
+            if (cache == null) {
+                long start = System.nanoTime();
+                WidgetSnapshot snapshot;
+
+                try {
+                    snapshot = WidgetHibernationFile.read(hibernationFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("The hibernated board cannot be loaded", e);
+                }
+
+                WidgetSpatialIndex newSpatialIndex = new WidgetSpatialIndex();
+                snapshot.sortedBy(WidgetSortField.Z).forEach(newSpatialIndex::add);
+
+                // The snapshots are published last, as readers take them to tell whether the board is awake
+                spatialIndex = newSpatialIndex;
+                widgets = snapshot;
+                cache = snapshot;
+
+                wakeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                deleteHibernationFile();
+            }
+
+            return cache;
+        }
+    }
+
+    // The board changes from now on, so the file would only be stale
+    private void deleteHibernationFile() {
+        try {
+            Files.deleteIfExists(hibernationFile);
+        } catch (IOException e) {
+            LOG.warn("Could not delete the hibernation file {}", hibernationFile, e);
+        }
+
+        hibernationFile = null;
+        wakeTimer = null;
+    }
+
+    private void markAccessed() {
+        // Read first, so busy boards do not keep writing the same cache line
+        if (!accessed) {
+            accessed = true;
+        }
+    }
+
+    private Page<Widget> findAll(WidgetSnapshot snapshot, Pageable pageable) {
+        Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(WidgetSortField.Z.getProperty()));
+        WidgetSortField sortField = WidgetSortField.fromProperty(order.getProperty())
+                .orElseThrow(() -> new UnsupportedOperationException("Sorting by " + order.getProperty() + " is not supported"));
+
+        PersistentSortedTree<Widget> sortedWidgets = snapshot.sortedBy(sortField);
+
+        int pageSize = pageable.getPageSize();
+        int offset = (int) Math.min(pageable.getOffset(), Integer.MAX_VALUE);
+
+        if (sortedWidgets.size() < offset) {
+            return new PageImpl<>(Collections.emptyList(), pageable, sortedWidgets.size());
+        }
+
+        int lastPageItem = (int) Math.min(sortedWidgets.size(), (long) offset + pageSize);
+
+        // Both directions are read from the same ascending index
+        Iterator<Widget> iterator = order.isAscending() ? sortedWidgets.iterator(offset) : sortedWidgets.descendingIterator(offset);
+        List<Widget> widgetSublist = new ArrayList<>(lastPageItem - offset);
+
+        for (int i = offset; i < lastPageItem; i++) {
+            widgetSublist.add(iterator.next());
+        }
+
+        return new PageImpl<>(widgetSublist, pageable, sortedWidgets.size());
+    }
+
+    // Number of widgets in the groups before the frame's, plus those of the frame below the z-index
+    private static int rankOfZIndex(PersistentSortedTree<Widget> widgetsByParent, Long parentId, int z) {
+        return widgetsByParent.rank(Widget.builder().parentId(parentId).z(z).build());
+    }
+
+    // Number of widgets in the groups before the frame's, plus those of the frame at or below the z-index
+    private static int rankAfterZIndex(PersistentSortedTree<Widget> widgetsByParent, Long parentId, int z) {
+        if (z < Integer.MAX_VALUE) {
+            return rankOfZIndex(widgetsByParent, parentId, z + 1);
+        }
+
+        int rank = rankOfZIndex(widgetsByParent, parentId, z);
+        return isAtZIndex(widgetsByParent, rank, parentId, z) ? rank + 1 : rank;
+    }
+
+    // Whether the widget at the index belongs to the frame, and has the z-index unless it is null
+    private static boolean isAtZIndex(PersistentSortedTree<Widget> widgetsByParent, int index, Long parentId, Integer z) {
+        if (index >= widgetsByParent.size()) {
+            return false;
+        }
+
+        Widget widget = widgetsByParent.get(index);
+        return Objects.equals(widget.getParentId(), parentId) && (z == null || widget.getZ() == z);
     }
 
     private synchronized long getNextId() {
         return lastId++;
     }
 
-    private Optional<Widget> findWidget(Long id) {
-        return findWidget(widgets, id);
+    // Ids assigned elsewhere must never be handed out again
+    private synchronized void reserveId(long id) {
+        lastId = Math.max(lastId, id + 1);
     }
 
-    private Optional<Widget> findWidgetInCache(Long id) {
-        return findWidget(cache, id);
+    private Optional<Widget> findWidget(Long id) {
+        return widgets.findById(id);
     }
 
-    private Optional<Widget> findWidget(Collection<Widget> collection, Long id) {
-        return collection.stream().filter(widget -> widget.getId().equals(id)).findAny();
+    // Large areas are cheaper to answer by scanning the top-level widgets than by walking the grid cell by cell
+    private Collection<Widget> intersectionCandidates(int minX, int minY, int maxX, int maxY) {
+        PersistentSortedTree<Widget> widgetsByParent = currentSnapshot().sortedByParent();
+        int topLevelWidgets = rankAfterZIndex(widgetsByParent, null, Integer.MAX_VALUE);
+
+        if (WidgetSpatialIndex.countCells(minX, minY, maxX, maxY) > topLevelWidgets) {
+            List<Widget> candidates = new ArrayList<>(topLevelWidgets);
+            Iterator<Widget> iterator = widgetsByParent.iterator(0);
+
+            for (int i = 0; i < topLevelWidgets; i++) {
+                candidates.add(iterator.next());
+            }
+
+            return candidates;
+        }
+
+        return currentSpatialIndex().findIntersecting(minX, minY, maxX, maxY);
     }
 
     private void updateCache() {
-        cache = new TreeSet<>(widgets);
+        CacheUpdateEvent event = new CacheUpdateEvent();
+        event.begin();
+
+        widgets = widgets.withVersion(cache.getVersion() + 1);
+        cache = widgets;
+        evictExpiredSnapshots();
+
+        event.widgets = widgets.size();
+        event.version = widgets.getVersion();
+        event.commit();
     }
 
-    @Override
-    public Iterable<Widget> findAll(Sort sort) {
-        throw new UnsupportedOperationException();
+    private void evictExpiredSnapshots() {
+        retainedSnapshots.values().removeIf(RetainedSnapshot::isExpired);
+    }
+
+    private class RetainedSnapshot {
+        private final WidgetSnapshot snapshot;
+        private volatile long lastAccessMillis;
+
+        RetainedSnapshot(WidgetSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.lastAccessMillis = System.currentTimeMillis();
+        }
+
+        WidgetSnapshot touch() {
+            lastAccessMillis = System.currentTimeMillis();
+            return snapshot;
+        }
+
+        // Versions are kept for a while after they were last read, not after they were created
+        boolean isExpired() {
+            return System.currentTimeMillis() - lastAccessMillis > snapshotRetentionMillis;
+        }
     }
 
     @Override
-    public <S extends Widget> Iterable<S> saveAll(Iterable<S> iterable) {
+    public Iterable<Widget> findAll(Sort sort) {
         throw new UnsupportedOperationException();
     }
 
+
     @Override
     public boolean existsById(Long aLong) {
         throw new UnsupportedOperationException();
@@ -154,10 +702,6 @@ public class WidgetInMemoryRepository implements WidgetRepository {
         throw new UnsupportedOperationException();
     }
 
-    @Override
-    public Iterable<Widget> findAllById(Iterable<Long> iterable) {
-        throw new UnsupportedOperationException();
-    }
 
     @Override
     public long count() {
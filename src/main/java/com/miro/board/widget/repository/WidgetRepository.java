@@ -1,24 +1,80 @@
 package com.miro.board.widget.repository;
 
 import com.miro.board.widget.model.Widget;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 @Repository("SQLRepository")
-public interface WidgetRepository extends PagingAndSortingRepository<Widget, Long> {
-    @Query("SELECT COALESCE(MAX(w.z), 0) FROM Widget w")
-    int getMaxZIndex();
+public interface WidgetRepository extends PagingAndSortingRepository<Widget, Long>, WidgetBulkRepository, WidgetZIndexRepository {
+    // Z-indexes are unique among the widgets of a frame, and among the top-level widgets, which is what
+    // every z-index operation below is scoped to. A null parent id stands for the top level.
 
-    @Query("SELECT w FROM Widget w where w.z >= ?1 ORDER BY w.z")
-    Collection<Widget> getWidgetsFromZIndex(int z);
+    Optional<Widget> findByParentIdAndZ(Long parentId, int z);
+
+    // The widgets of a frame, in z order
+    List<Widget> findAllByParentIdOrderByZ(Long parentId);
+
+    boolean existsByParentId(Long parentId);
+
+    // Top-level widgets whose z-index is within [zFrom, zTo], read through the (parentId, z) index
+    Page<Widget> findAllByParentIdIsNullAndZBetween(int zFrom, int zTo, Pageable pageable);
+
+    long countByParentIdIsNullAndZBetween(int zFrom, int zTo);
+
+    // Every widget in stacking order, from the background to the foreground: each top-level widget
+    // followed by the widgets of its frame. The page must be unsorted.
+    @Query(value = "SELECT w FROM Widget w LEFT JOIN Widget p ON p.id = w.parentId " +
+            "ORDER BY COALESCE(p.z, w.z), CASE WHEN w.parentId IS NULL THEN 0 ELSE 1 END, w.z",
+            countQuery = "SELECT COUNT(w) FROM Widget w")
+    Page<Widget> findAllInStackingOrder(Pageable pageable);
+
+    // Shifts widgets by id, as undo, redo and replication replay the shifts recorded
 
     @Modifying
     @Query("UPDATE Widget w SET w.z = w.z + 1 WHERE w.id in ?1")
     void increaseZIndex(List<Long> ids);
 
+    @Modifying
+    @Query("UPDATE Widget w SET w.z = w.z - 1 WHERE w.id in ?1")
+    void decreaseZIndex(List<Long> ids);
+
+    // Hit tests and area queries only see top-level widgets; the widgets of a frame are reached through it
+
+    // Top-level widgets containing the point (x, y), from the foreground to the background
+    @Query("SELECT w FROM Widget w WHERE w.parentId IS NULL AND w.x <= ?1 AND w.x + w.width > ?1 AND w.y <= ?2 AND w.y + w.height > ?2 ORDER BY w.z DESC")
+    List<Widget> findAllContainingPoint(int x, int y, Pageable pageable);
+
+    // Top-level widgets overlapping [minX, maxX) x [minY, maxY) whose width or height is at least minSize, in z order
+    @Query("SELECT w FROM Widget w WHERE w.parentId IS NULL AND w.x < ?3 AND w.x + w.width > ?1 AND w.y < ?4 AND w.y + w.height > ?2 " +
+            "AND (w.width >= ?5 OR w.height >= ?5) ORDER BY w.z")
+    List<Widget> findAllIntersecting(int minX, int minY, int maxX, int maxY, int minSize);
+
+    @Query("SELECT COUNT(w) FROM Widget w WHERE w.parentId IS NULL AND w.x < ?3 AND w.x + w.width > ?1 AND w.y < ?4 AND w.y + w.height > ?2")
+    long countIntersecting(int minX, int minY, int maxX, int maxY);
+
+    // The version of the board reads are currently served from. Empty if the repository does not keep
+    // versions of the board.
+    default OptionalLong getCurrentVersion() {
+        return OptionalLong.empty();
+    }
+
+    // Retains the current version of the board so it can be read with findAllAtVersion for a while.
+    // Empty if the repository does not keep versions of the board.
+    default OptionalLong retainCurrentVersion() {
+        return OptionalLong.empty();
+    }
+
+    // A page of the board as it was at the given version, empty if that version is not retained
+    default Optional<Page<Widget>> findAllAtVersion(Pageable pageable, long version) {
+        return Optional.empty();
+    }
+
 }
@@ -0,0 +1,99 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetSortField;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable version of the board, indexed by id, by every sortable field and by frame. Adding or
+ * removing a widget returns a new snapshot sharing almost all of its structure with this one.
+ * */
+final class WidgetSnapshot {
+
+    private static final Comparator<Widget> BY_ID = Comparator.comparing(Widget::getId);
+    // Top-level widgets first, then the widgets of each frame, each group in z order
+    private static final Comparator<Widget> BY_PARENT = Comparator.comparing(Widget::getParentId,
+            Comparator.nullsFirst(Comparator.<Long>naturalOrder())).thenComparing(WidgetSortField.Z.getComparator());
+
+    private final long version;
+    private final PersistentSortedTree<Widget> byId;
+    private final PersistentSortedTree<Widget> byParent;
+    private final Map<WidgetSortField, PersistentSortedTree<Widget>> indexes;
+
+    private WidgetSnapshot(long version, PersistentSortedTree<Widget> byId, PersistentSortedTree<Widget> byParent,
+                           Map<WidgetSortField, PersistentSortedTree<Widget>> indexes) {
+        this.version = version;
+        this.byId = byId;
+        this.byParent = byParent;
+        this.indexes = indexes;
+    }
+
+    static WidgetSnapshot empty() {
+        Map<WidgetSortField, PersistentSortedTree<Widget>> indexes = new EnumMap<>(WidgetSortField.class);
+        for (WidgetSortField field : WidgetSortField.values()) {
+            indexes.put(field, PersistentSortedTree.empty(field.getComparator()));
+        }
+        return new WidgetSnapshot(0, PersistentSortedTree.empty(BY_ID), PersistentSortedTree.empty(BY_PARENT), indexes);
+    }
+
+    // Builds every index at once from sorted copies of the widgets, in O(n) for the orders they already have
+    static WidgetSnapshot of(Collection<Widget> widgets) {
+        Map<WidgetSortField, PersistentSortedTree<Widget>> indexes = new EnumMap<>(WidgetSortField.class);
+        for (WidgetSortField field : WidgetSortField.values()) {
+            indexes.put(field, sortedTree(widgets, field.getComparator()));
+        }
+        return new WidgetSnapshot(0, sortedTree(widgets, BY_ID), sortedTree(widgets, BY_PARENT), indexes);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    Optional<Widget> findById(Long id) {
+        return byId.find(Widget.builder().id(id).build());
+    }
+
+    PersistentSortedTree<Widget> sortedBy(WidgetSortField field) {
+        return indexes.get(field);
+    }
+
+    // A widget sorts first among the widgets of its frame and z-index when it has no id, so the widgets
+    // of a frame are found by rank without knowing any of them
+    PersistentSortedTree<Widget> sortedByParent() {
+        return byParent;
+    }
+
+    WidgetSnapshot withVersion(long newVersion) {
+        return new WidgetSnapshot(newVersion, byId, byParent, indexes);
+    }
+
+    private static PersistentSortedTree<Widget> sortedTree(Collection<Widget> widgets, Comparator<Widget> comparator) {
+        List<Widget> sortedWidgets = new ArrayList<>(widgets);
+        sortedWidgets.sort(comparator);
+        return PersistentSortedTree.fromSorted(comparator, sortedWidgets);
+    }
+
+    WidgetSnapshot add(Widget widget) {
+        Map<WidgetSortField, PersistentSortedTree<Widget>> newIndexes = new EnumMap<>(WidgetSortField.class);
+        indexes.forEach((field, index) -> newIndexes.put(field, index.insert(widget)));
+        return new WidgetSnapshot(version, byId.insert(widget), byParent.insert(widget), newIndexes);
+    }
+
+    // The widget must still hold the values it was indexed with, otherwise it cannot be located in the indexes
+    WidgetSnapshot remove(Widget widget) {
+        Map<WidgetSortField, PersistentSortedTree<Widget>> newIndexes = new EnumMap<>(WidgetSortField.class);
+        indexes.forEach((field, index) -> newIndexes.put(field, index.remove(widget)));
+        return new WidgetSnapshot(version, byId.remove(widget), byParent.remove(widget), newIndexes);
+    }
+}
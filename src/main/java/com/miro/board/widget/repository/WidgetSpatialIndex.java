@@ -0,0 +1,220 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Uniform grid over the board. Every cell keeps the widgets overlapping it ordered from the
+ * foreground to the background, so the topmost widget at a point is usually the first or one of
+ * the first widgets of a single cell. Widgets spanning too many cells are kept in a separate
+ * z-ordered set instead of being copied into every cell they cover.
+ *
+ * All structures are concurrent so hit tests can run while the board is being written. Writers
+ * must add the new version of a widget before removing the old one, which makes a reader see a
+ * widget twice for a moment rather than miss it. A new version keeping the id and z-index of the
+ * old one takes its entry in place, and removing the old version leaves an entry holding another
+ * version untouched.
+ *
+ * Only top-level widgets are indexed: the widgets of a frame are positioned relative to it and are
+ * hit-tested through it.
+ * */
+class WidgetSpatialIndex {
+
+    private static final int CELL_SIZE = 256;
+    private static final int MAX_CELLS_PER_WIDGET = 64;
+
+    // Foreground first; the id distinguishes two versions of a widget while it is being replaced
+    private static final Comparator<Widget> FOREGROUND_FIRST = Comparator.comparingInt(Widget::getZ).reversed()
+            .thenComparing(Widget::getId);
+
+    private static final ConcurrentNavigableMap<Widget, Widget> EMPTY_CELL = new ConcurrentSkipListMap<>(FOREGROUND_FIRST);
+
+    private final ConcurrentHashMap<Long, ConcurrentNavigableMap<Widget, Widget>> cells = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Widget, Widget> oversizedWidgets = new ConcurrentSkipListMap<>(FOREGROUND_FIRST);
+
+    void replace(Widget previous, Widget current) {
+        add(current);
+
+        if (previous != null) {
+            remove(previous);
+        }
+    }
+
+    void add(Widget widget) {
+        if (widget.getParentId() != null) {
+            return;
+        }
+
+        if (isOversized(widget)) {
+            oversizedWidgets.put(widget, widget);
+            return;
+        }
+
+        forEachCell(widget, cell -> cells.computeIfAbsent(cell, key -> new ConcurrentSkipListMap<>(FOREGROUND_FIRST)).put(widget, widget));
+    }
+
+    void remove(Widget widget) {
+        if (widget.getParentId() != null) {
+            return;
+        }
+
+        if (isOversized(widget)) {
+            oversizedWidgets.remove(widget, widget);
+            return;
+        }
+
+        forEachCell(widget, cell -> cells.computeIfPresent(cell, (key, cellWidgets) -> {
+            cellWidgets.remove(widget, widget);
+            return cellWidgets.isEmpty() ? null : cellWidgets;
+        }));
+    }
+
+    /**
+     * Widgets containing the point, from the foreground to the background.
+     * */
+    List<Widget> findContaining(int x, int y, long offset, int limit) {
+        Map<Widget, Widget> cellWidgets = cells.getOrDefault(cellKey(cellOf(x), cellOf(y)), EMPTY_CELL);
+
+        Iterator<Widget> cellIterator = cellWidgets.values().iterator();
+        Iterator<Widget> oversizedIterator = oversizedWidgets.values().iterator();
+
+        Widget nextInCell = nextContaining(cellIterator, x, y);
+        Widget nextOversized = nextContaining(oversizedIterator, x, y);
+
+        List<Widget> result = new ArrayList<>(Math.min(limit, 16));
+        Set<Long> seenIds = new HashSet<>();
+        long skipped = 0;
+
+        // Merge both foreground-first sequences
+        while (result.size() < limit && (nextInCell != null || nextOversized != null)) {
+            Widget next;
+
+            if (nextOversized == null || (nextInCell != null && FOREGROUND_FIRST.compare(nextInCell, nextOversized) <= 0)) {
+                next = nextInCell;
+                nextInCell = nextContaining(cellIterator, x, y);
+            } else {
+                next = nextOversized;
+                nextOversized = nextContaining(oversizedIterator, x, y);
+            }
+
+            // A widget being replaced can be seen in both versions, keep the foreground one only
+            if (!seenIds.add(next.getId())) {
+                continue;
+            }
+
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(next);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of grid cells the area [minX, maxX) x [minY, maxY) is made of, to decide whether walking
+     * the cells is cheaper than scanning every widget.
+     * */
+    static long countCells(int minX, int minY, int maxX, int maxY) {
+        if (minX >= maxX || minY >= maxY) {
+            return 0;
+        }
+
+        long columns = (long) lastCellOf(minX, maxX - minX) - cellOf(minX) + 1;
+        long rows = (long) lastCellOf(minY, maxY - minY) - cellOf(minY) + 1;
+        return columns * rows;
+    }
+
+    /**
+     * Widgets overlapping the area [minX, maxX) x [minY, maxY), in no particular order.
+     * */
+    Collection<Widget> findIntersecting(int minX, int minY, int maxX, int maxY) {
+        Map<Long, Widget> widgetsById = new HashMap<>();
+
+        Consumer<Widget> collector = widget -> {
+            if (intersects(widget, minX, minY, maxX, maxY)) {
+                // Keep the foreground version of a widget being replaced
+                widgetsById.merge(widget.getId(), widget, (first, second) -> first.getZ() >= second.getZ() ? first : second);
+            }
+        };
+
+        if (minX < maxX && minY < maxY) {
+            int lastColumn = lastCellOf(minX, maxX - minX);
+            int lastRow = lastCellOf(minY, maxY - minY);
+
+            for (int column = cellOf(minX); column <= lastColumn; column++) {
+                for (int row = cellOf(minY); row <= lastRow; row++) {
+                    cells.getOrDefault(cellKey(column, row), EMPTY_CELL).values().forEach(collector);
+                }
+            }
+        }
+
+        oversizedWidgets.values().forEach(collector);
+
+        return widgetsById.values();
+    }
+
+    private static Widget nextContaining(Iterator<Widget> iterator, int x, int y) {
+        while (iterator.hasNext()) {
+            Widget widget = iterator.next();
+            if (contains(widget, x, y)) {
+                return widget;
+            }
+        }
+        return null;
+    }
+
+    static boolean contains(Widget widget, int x, int y) {
+        return widget.getX() <= x && x < (long) widget.getX() + widget.getWidth()
+                && widget.getY() <= y && y < (long) widget.getY() + widget.getHeight();
+    }
+
+    static boolean intersects(Widget widget, int minX, int minY, int maxX, int maxY) {
+        return widget.getX() < maxX && (long) widget.getX() + widget.getWidth() > minX
+                && widget.getY() < maxY && (long) widget.getY() + widget.getHeight() > minY;
+    }
+
+    private static boolean isOversized(Widget widget) {
+        long columns = lastCellOf(widget.getX(), widget.getWidth()) - cellOf(widget.getX()) + 1;
+        long rows = lastCellOf(widget.getY(), widget.getHeight()) - cellOf(widget.getY()) + 1;
+        return columns * rows > MAX_CELLS_PER_WIDGET;
+    }
+
+    private static void forEachCell(Widget widget, LongConsumer consumer) {
+        int lastColumn = lastCellOf(widget.getX(), widget.getWidth());
+        int lastRow = lastCellOf(widget.getY(), widget.getHeight());
+
+        for (int column = cellOf(widget.getX()); column <= lastColumn; column++) {
+            for (int row = cellOf(widget.getY()); row <= lastRow; row++) {
+                consumer.accept(cellKey(column, row));
+            }
+        }
+    }
+
+    private static int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    private static int lastCellOf(int start, int length) {
+        return (int) Math.floorDiv((long) start + Math.max(length, 1) - 1, CELL_SIZE);
+    }
+
+    private static long cellKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+}
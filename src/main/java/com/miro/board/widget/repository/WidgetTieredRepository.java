@@ -0,0 +1,204 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetSortField;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory repository backed by the SQL database. Reads and writes are served from memory; the ids
+ * of the widgets written are collected in a dirty set and a background flusher periodically writes
+ * their latest version to the database in JDBC batches, so several writes to the same widget within
+ * a flush interval cost a single row update. The board is loaded from the database on startup.
+ *
+ * Widgets are marked dirty once their write is published to readers, shifts included, so the flusher
+ * never writes a z-index readers have not seen yet.
+ * */
+@Repository("TieredRepository")
+@ConditionalOnProperty(name = "use-tiered-repository", havingValue = "true")
+// Eager under lazy initialization, so the board is loaded before the first request rather than during it
+@Lazy(false)
+public class WidgetTieredRepository extends WidgetInMemoryRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WidgetTieredRepository.class);
+
+    private static final String DELETE_SQL = "DELETE FROM widget WHERE id = ?";
+
+    private final WidgetRepository sqlRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    private final Timer flushTimer;
+
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flusher;
+
+    public WidgetTieredRepository(@Qualifier("SQLRepository") WidgetRepository sqlRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${snapshot-retention-ms}") long snapshotRetentionMillis,
+                                  @Value("${tiered-repository.flush-interval-ms}") long flushIntervalMillis,
+                                  @Value("${tiered-repository.batch-size}") int batchSize) {
+        super(snapshotRetentionMillis);
+        this.sqlRepository = sqlRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+
+        Gauge.builder("board.tiered.dirty.widgets", dirtyIds, Set::size)
+                .description("Widgets written in memory and not yet flushed to the database")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("board.tiered.flush")
+                .description("Time spent flushing dirty widgets to the database")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        // Read through JPA, which waits for the schema to be created
+        List<Widget> widgets = new ArrayList<>();
+        sqlRepository.findAll(Sort.by(WidgetSortField.Z.getProperty())).forEach(widgets::add);
+        super.replaceAll(widgets);
+        LOG.info("Loaded {} widgets from the database", widgets.size());
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiered-repository-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(flushIntervalMillis * 2, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    @Override
+    public Widget save(Widget widget) {
+        Widget savedWidget = super.save(widget);
+        markDirty(savedWidget.getId());
+        return savedWidget;
+    }
+
+    @Override
+    public <S extends Widget> Iterable<S> saveAll(Iterable<S> widgets) {
+        Iterable<S> savedWidgets = super.saveAll(widgets);
+        savedWidgets.forEach(widget -> markDirty(widget.getId()));
+        return savedWidgets;
+    }
+
+    @Override
+    public Widget upsert(Widget widget) {
+        Widget savedWidget = super.upsert(widget);
+        markDirty(savedWidget.getId());
+        return savedWidget;
+    }
+
+    @Override
+    public void replaceAll(Collection<Widget> newWidgets) {
+        List<Long> previousIds = new ArrayList<>();
+        findAll(PageRequest.of(0, Integer.MAX_VALUE)).forEach(widget -> previousIds.add(widget.getId()));
+
+        super.replaceAll(newWidgets);
+
+        previousIds.forEach(this::markDirty);
+        newWidgets.forEach(widget -> markDirty(widget.getId()));
+    }
+
+    @Override
+    public void delete(Widget widget) {
+        super.delete(widget);
+        markDirty(widget.getId());
+    }
+
+    @Override
+    public void increaseZIndex(List<Long> widgetIds) {
+        super.increaseZIndex(widgetIds);
+        widgetIds.forEach(this::markDirty);
+    }
+
+    @Override
+    public void decreaseZIndex(List<Long> widgetIds) {
+        super.decreaseZIndex(widgetIds);
+        widgetIds.forEach(this::markDirty);
+    }
+
+    public int getDirtyWidgets() {
+        return dirtyIds.size();
+    }
+
+    // Writes the latest version of every dirty widget, or deletes it if it no longer exists
+    public synchronized void flush() {
+        if (dirtyIds.isEmpty()) {
+            return;
+        }
+
+        flushTimer.record(() -> {
+            List<Widget> widgetsToMerge = new ArrayList<>();
+            List<Long> idsToDelete = new ArrayList<>();
+
+            for (Long id : List.copyOf(dirtyIds)) {
+                dirtyIds.remove(id);
+
+                Optional<Widget> widget = findById(id);
+                if (widget.isPresent()) {
+                    widgetsToMerge.add(widget.get());
+                } else {
+                    idsToDelete.add(id);
+                }
+            }
+
+            try {
+                WidgetBulkRepositoryImpl.upsertAll(jdbcTemplate, widgetsToMerge, batchSize);
+                jdbcTemplate.batchUpdate(DELETE_SQL, idsToDelete, batchSize, (statement, id) -> statement.setLong(1, id));
+            } catch (RuntimeException e) {
+                // Retry with the next flush, merging with whatever was written meanwhile
+                widgetsToMerge.forEach(widget -> dirtyIds.add(widget.getId()));
+                dirtyIds.addAll(idsToDelete);
+                throw e;
+            }
+
+            LOG.debug("Flushed {} widgets and {} deletions", widgetsToMerge.size(), idsToDelete.size());
+        });
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not flush widgets to the database", e);
+        }
+    }
+
+    // Marking happens after the write is visible to readers, which is where the flusher reads from
+    private void markDirty(Long id) {
+        dirtyIds.add(id);
+    }
+}
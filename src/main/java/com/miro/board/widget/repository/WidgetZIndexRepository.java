@@ -0,0 +1,24 @@
+package com.miro.board.widget.repository;
+
+import java.util.List;
+
+/**
+ * Z-index queries of a group of widgets: the widgets of a frame, or the top-level widgets when the
+ * parent id is null, among which z-indexes are unique. For SQL they are implemented in
+ * {@link WidgetZIndexRepositoryImpl}, where each group is read through the (parentId, z) index.
+ * */
+public interface WidgetZIndexRepository {
+
+    // The highest z-index of the group, 0 if it is empty
+    int getMaxZIndex(Long parentId);
+
+    // The lowest z-index of the group, 0 if it is empty
+    int getMinZIndex(Long parentId);
+
+    // Ids of the widgets of the group occupying z, z + 1, z + 2... up to the first free z-index or the
+    // excluded widget, in z order. These are the widgets to shift for a widget to take z-index z.
+    List<Long> getZIndexRun(Long parentId, int z, Long excludedId);
+
+    // Increases by one the z-index of every widget of the group within [zFrom, zTo], a run found by getZIndexRun
+    void increaseZIndexRun(Long parentId, int zFrom, int zTo);
+}
@@ -0,0 +1,89 @@
+package com.miro.board.widget.repository;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+
+// Picked up by Spring Data as the SQL implementation of WidgetZIndexRepository. The top level is
+// queried with its own IS NULL predicate, as comparing a coalesced parent id could not use the index.
+class WidgetZIndexRepositoryImpl implements WidgetZIndexRepository {
+
+    private static final int FIRST_RUN_BATCH_SIZE = 64;
+    private static final int MAX_RUN_BATCH_SIZE = 4096;
+
+    private final EntityManager entityManager;
+
+    WidgetZIndexRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public int getMaxZIndex(Long parentId) {
+        return createQuery("SELECT COALESCE(MAX(w.z), 0) FROM Widget w WHERE %s", parentId, Integer.class).getSingleResult();
+    }
+
+    @Override
+    public int getMinZIndex(Long parentId) {
+        return createQuery("SELECT COALESCE(MIN(w.z), 0) FROM Widget w WHERE %s", parentId, Integer.class).getSingleResult();
+    }
+
+    // Reads the group from z in growing batches, in index order, and stops at the first gap, so it
+    // reads the run plus at most one batch whatever the number of widgets above it. Only ids and
+    // z-indexes are read, no widget goes through the persistence context.
+    @Override
+    public List<Long> getZIndexRun(Long parentId, int z, Long excludedId) {
+        List<Long> ids = new ArrayList<>();
+
+        for (int batchSize = FIRST_RUN_BATCH_SIZE; ; batchSize = Math.min(2 * batchSize, MAX_RUN_BATCH_SIZE)) {
+            List<Object[]> batch = createQuery("SELECT w.id, w.z FROM Widget w WHERE %s AND w.z >= :z ORDER BY w.parentId, w.z",
+                    parentId, Object[].class)
+                    .setParameter("z", z + ids.size())
+                    .setMaxResults(batchSize)
+                    .getResultList();
+
+            for (Object[] widget : batch) {
+                if ((Integer) widget[1] != z + ids.size() || widget[0].equals(excludedId)) {
+                    return ids;
+                }
+
+                ids.add((Long) widget[0]);
+            }
+
+            if (batch.size() < batchSize) {
+                return ids;
+            }
+        }
+    }
+
+    // A single set-based update over the index range
+    @Override
+    @Transactional
+    public void increaseZIndexRun(Long parentId, int zFrom, int zTo) {
+        Query query = entityManager.createQuery(String.format(
+                "UPDATE Widget w SET w.z = w.z + 1 WHERE %s AND w.z BETWEEN :zFrom AND :zTo", groupPredicate(parentId)));
+
+        setGroup(query, parentId)
+                .setParameter("zFrom", zFrom)
+                .setParameter("zTo", zTo)
+                .executeUpdate();
+    }
+
+    // The %s in the query is replaced with the predicate selecting the group
+    private <T> TypedQuery<T> createQuery(String query, Long parentId, Class<T> type) {
+        TypedQuery<T> typedQuery = entityManager.createQuery(String.format(query, groupPredicate(parentId)), type);
+        setGroup(typedQuery, parentId);
+        return typedQuery;
+    }
+
+    private static String groupPredicate(Long parentId) {
+        return parentId == null ? "w.parentId IS NULL" : "w.parentId = :parentId";
+    }
+
+    private static Query setGroup(Query query, Long parentId) {
+        return parentId == null ? query : query.setParameter("parentId", parentId);
+    }
+}
@@ -0,0 +1,65 @@
+package com.miro.board.profiling;
+
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationContext;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class FlightRecordingEndpointTest {
+
+    @TempDir
+    Path recordingDirectory;
+
+    @Test
+    void recordsTheBoardEventsIntoAFile() throws Exception {
+        FlightRecordingEndpoint endpoint = new FlightRecordingEndpoint(recordingDirectory.toString());
+        WidgetService widgetService = buildService();
+
+        FlightRecordingStatus started = endpoint.start();
+        assertThat(started.isRecording(), is(true));
+
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+
+        FlightRecordingStatus stopped = endpoint.stop();
+        assertThat(stopped.isRecording(), is(false));
+        assertThat(stopped.getFile(), is(notNullValue()));
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(Paths.get(stopped.getFile())).stream()
+                .filter(event -> event.getEventType().getName().startsWith("com.miro.board."))
+                .collect(Collectors.toList());
+
+        List<String> eventNames = events.stream().map(event -> event.getEventType().getName()).collect(Collectors.toList());
+        assertThat(eventNames, hasItems("com.miro.board.WidgetLock", "com.miro.board.ZIndexCascade", "com.miro.board.CacheUpdate"));
+
+        RecordedEvent lastCascade = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.miro.board.ZIndexCascade"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        assertThat(lastCascade.getInt("startZIndex"), is(1));
+        assertThat(lastCascade.getInt("shiftedWidgets"), is(1));
+    }
+
+    private static WidgetService buildService() {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        given(applicationContext.getBean("InMemoryRepository")).willReturn(new WidgetInMemoryRepository());
+        return WidgetServiceFactory.buildService(applicationContext);
+    }
+}
@@ -0,0 +1,128 @@
+package com.miro.board.replication;
+
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class ReplicationTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private WidgetService leaderService;
+    private WidgetService followerService;
+    private ReplicationLeader leader;
+    private ReplicationFollower follower;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        leaderService = buildService();
+        followerService = buildService();
+        meterRegistry = new SimpleMeterRegistry();
+
+        leader = new ReplicationLeader(leaderService, 0);
+        leader.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        follower.stop();
+        leader.stop();
+    }
+
+    @Test
+    void followerLoadsASnapshotAndAppliesTheMutationLog() throws Exception {
+        leaderService.create(WidgetFactory.buildWidgetRequest(1));
+        leaderService.create(WidgetFactory.buildWidgetRequest(2));
+
+        startFollower();
+        awaitSameBoard();
+
+        // Shifts the first two widgets up
+        leaderService.create(WidgetFactory.buildWidgetRequest(1));
+        leaderService.update(1L, WidgetFactory.buildWidgetRequest(10));
+        leaderService.delete(2L);
+
+        awaitSameBoard();
+
+        assertThat(getBoard(followerService), is(List.of("3@1", "1@10")));
+        assertThat(follower.getStatus().isConnected(), is(true));
+        assertThat(follower.getLagMillis(), lessThan(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    void followerAppliesTheOperationsUndone() throws Exception {
+        leaderService.create(WidgetFactory.buildWidgetRequest(1));
+        leaderService.create(WidgetFactory.buildWidgetRequest(2));
+        // Shifts the first two widgets up
+        leaderService.create(WidgetFactory.buildWidgetRequest(1));
+
+        startFollower();
+        awaitSameBoard();
+
+        leaderService.undo(1);
+        awaitSameBoard();
+
+        assertThat(getBoard(followerService), is(List.of("1@1", "2@2")));
+    }
+
+    @Test
+    void followerReportsItsLagFromHeartbeats() throws Exception {
+        startFollower();
+        await(() -> follower.getAppliedSequence() == 0 && follower.getLagMillis() < TIMEOUT_MILLIS);
+
+        follower.checkStaleness();
+        assertThat(meterRegistry.get("board.replication.lag").gauge().value(), is(lessThan((double) TIMEOUT_MILLIS)));
+        assertThat(leader.getStatus().getFollowers(), is(1));
+    }
+
+    private void startFollower() {
+        follower = new ReplicationFollower(followerService, "localhost", leader.getPort(), TIMEOUT_MILLIS, meterRegistry);
+        follower.start();
+    }
+
+    private void awaitSameBoard() throws InterruptedException {
+        await(() -> getBoard(followerService).equals(getBoard(leaderService)));
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Follower did not catch up in time");
+            Thread.sleep(10);
+        }
+    }
+
+    // Every widget as id@z, in z order
+    private static List<String> getBoard(WidgetService widgetService) {
+        return widgetService.getAll(PageRequest.of(0, 100)).getContent().stream()
+                .map(widget -> widget.getId() + "@" + widget.getZ())
+                .collect(Collectors.toList());
+    }
+
+    private static WidgetService buildService() {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        given(applicationContext.getBean("InMemoryRepository")).willReturn(new WidgetInMemoryRepository());
+        return WidgetServiceFactory.buildService(applicationContext);
+    }
+}
@@ -0,0 +1,95 @@
+package com.miro.board.startup;
+
+import com.miro.board.BoardApplication;
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.widget.WidgetService;
+import com.miro.board.widget.model.Widget;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class FastStartupEnvironmentPostProcessorTest {
+
+    private static final String JPA_EXCLUSIONS = "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+            + "org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration,"
+            + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+            + "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration";
+
+    private final FastStartupEnvironmentPostProcessor postProcessor = new FastStartupEnvironmentPostProcessor();
+
+    @Test
+    void excludesJpaForTheInMemoryRepository() {
+        MockEnvironment environment = buildEnvironment(FastStartupEnvironmentPostProcessor.PROFILE);
+
+        postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.autoconfigure.exclude"), is(JPA_EXCLUSIONS));
+    }
+
+    @Test
+    void keepsTheExclusionsAlreadyConfigured() {
+        MockEnvironment environment = buildEnvironment(FastStartupEnvironmentPostProcessor.PROFILE)
+                .withProperty("spring.autoconfigure.exclude", "com.example.FirstAutoConfiguration, com.example.SecondAutoConfiguration");
+
+        postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.autoconfigure.exclude"),
+                is("com.example.FirstAutoConfiguration,com.example.SecondAutoConfiguration," + JPA_EXCLUSIONS));
+    }
+
+    @Test
+    void keepsJpaForTheSqlAndTieredRepositories() {
+        for (String repository : new String[]{"use-sql-repository", "use-tiered-repository"}) {
+            MockEnvironment environment = buildEnvironment(FastStartupEnvironmentPostProcessor.PROFILE)
+                    .withProperty(repository, "true");
+
+            postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+            assertThat(environment.getProperty("spring.autoconfigure.exclude"), is(nullValue()));
+        }
+    }
+
+    @Test
+    void changesNothingWithoutTheProfile() {
+        MockEnvironment environment = buildEnvironment();
+
+        postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.autoconfigure.exclude"), is(nullValue()));
+    }
+
+    @Test
+    void servesTheInMemoryBoardWithoutADatabase() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BoardApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(FastStartupEnvironmentPostProcessor.PROFILE)
+                .run()) {
+
+            assertThat(context.getBeanNamesForType(DataSource.class).length, is(0));
+            assertThat(context.getBeanNamesForType(EntityManagerFactory.class).length, is(0));
+
+            WidgetService widgetService = context.getBean(WidgetService.class);
+            Widget widget = widgetService.create(WidgetFactory.buildWidgetRequest(1));
+
+            assertThat(widgetService.get(widget.getId()).getZ(), is(1));
+        }
+    }
+
+    private static MockEnvironment buildEnvironment(String... profiles) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("use-sql-repository", "false")
+                .withProperty("use-tiered-repository", "false");
+        environment.setActiveProfiles(profiles);
+        return environment;
+    }
+}
@@ -0,0 +1,16 @@
+package com.miro.board.util;
+
+import com.miro.board.widget.model.Widget;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class WidgetChangesResponse {
+    private long version;
+    private boolean resync;
+    private List<Widget> widgets;
+    private List<Long> deleted;
+}
@@ -0,0 +1,13 @@
+package com.miro.board.util;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class WidgetHistoryResponse {
+    private int applied;
+    private int undoable;
+    private int redoable;
+    private long sizeInBytes;
+}
@@ -0,0 +1,19 @@
+package com.miro.board.util;
+
+import com.miro.board.widget.WidgetService;
+import org.springframework.context.ApplicationContext;
+
+public final class WidgetServiceFactory {
+
+    // The budgets of application.properties
+    public static final long UNDO_BUDGET_BYTES = 8 * 1024 * 1024;
+    public static final long CHANGE_LOG_BUDGET_BYTES = 1024 * 1024;
+
+    private WidgetServiceFactory() {
+    }
+
+    // A service on the in-memory repository the context returns
+    public static WidgetService buildService(ApplicationContext applicationContext) {
+        return new WidgetService(applicationContext, false, false, UNDO_BUDGET_BYTES, CHANGE_LOG_BUDGET_BYTES);
+    }
+}
@@ -0,0 +1,18 @@
+package com.miro.board.util;
+
+import com.miro.board.widget.model.Widget;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class WidgetTileResponse {
+    private int zoom;
+    private long x;
+    private long y;
+    private long size;
+    private List<Widget> widgets;
+    private long hiddenWidgets;
+}
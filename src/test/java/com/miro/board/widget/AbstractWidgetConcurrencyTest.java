@@ -0,0 +1,295 @@
+package com.miro.board.widget;
+
+import com.miro.board.exception.InvalidParentException;
+import com.miro.board.exception.WidgetNotFoundException;
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.widget.model.VersionedPage;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetRequest;
+import lombok.Value;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs randomized histories of concurrent creates, updates, layer moves, deletes and reads against
+ * the widget service and checks the outcome could have been produced by running the operations one
+ * at a time, each taking effect somewhere between its invocation and its response:
+ *
+ * - every read of the board has unique, increasing z-indexes;
+ * - a read lists every widget created before it started and not being deleted meanwhile, and none
+ *   deleted before it started or created after it completed, and a read of a single widget agrees;
+ * - versions of the board only move forward: a read completing before another starts never sees a
+ *   later version, and two reads of the same version see the same widgets;
+ * - once everything is done, the board holds exactly the widgets created and not deleted.
+ *
+ * The subclasses run the histories against each repository.
+ * */
+abstract class AbstractWidgetConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int HISTORIES = 3;
+    // Few z-indexes, so most writes collide and shift the widgets above them
+    private static final int Z_INDEXES = 20;
+    private static final PageRequest WHOLE_BOARD = PageRequest.of(0, WidgetService.MAX_PAGE_SIZE, Sort.by("z"));
+
+    @Autowired
+    private WidgetService widgetService;
+
+    // Kept small enough for the board to stay within a single page
+    protected abstract int getOperationsPerThread();
+
+    @Test
+    void concurrentHistoriesAreLinearizable() throws Exception {
+        for (int history = 0; history < HISTORIES; history++) {
+            widgetService.importAll(() -> null);
+            checkHistory(runHistory());
+        }
+    }
+
+    private History runHistory() throws Exception {
+        History history = new History();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<?>> threads = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                threads.add(executor.submit(() -> {
+                    start.await();
+                    for (int operation = 0; operation < getOperationsPerThread(); operation++) {
+                        runRandomOperation(history);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> thread : threads) {
+                thread.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return history;
+    }
+
+    // No widget is placed in a frame, so none of them fails with an InvalidParentException
+    private void runRandomOperation(History history) throws InvalidParentException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = random.nextInt(100);
+        Long id = history.randomCreatedId();
+
+        if (operation < 30 || id == null) {
+            WidgetRequest request = WidgetFactory.buildWidgetRequest(random.nextInt(4) == 0 ? null : random.nextInt(1, Z_INDEXES));
+            long invokedAt = System.nanoTime();
+            Widget widget = widgetService.create(request);
+            history.created(widget.getId(), invokedAt, System.nanoTime());
+        } else if (operation < 45) {
+            attempt(() -> widgetService.update(id, WidgetFactory.buildWidgetRequest(random.nextInt(1, Z_INDEXES))));
+        } else if (operation < 50) {
+            attempt(() -> random.nextBoolean() ? widgetService.moveToFront(id) : widgetService.moveToBack(id));
+        } else if (operation < 60) {
+            long invokedAt = history.deleting(id);
+            if (attempt(() -> widgetService.delete(id))) {
+                history.deleted(id, invokedAt, System.nanoTime());
+            }
+        } else if (operation < 80) {
+            long invokedAt = System.nanoTime();
+            Optional<Widget> widget = widgetService.find(id);
+            history.read(new Read(invokedAt, System.nanoTime(), null, id, widget.map(found -> Set.of(found.getId())).orElse(Set.of()), null));
+        } else {
+            long invokedAt = System.nanoTime();
+            VersionedPage page = getWholeBoard();
+            assertThat(page.getPage().getTotalElements(), is((long) page.getPage().getNumberOfElements()));
+            history.read(new Read(invokedAt, System.nanoTime(), page.getVersion(), null, ids(page.getPage().getContent()), page.getPage().getContent()));
+        }
+    }
+
+    private void checkHistory(History history) {
+        List<String> violations = new ArrayList<>();
+
+        for (Read read : history.reads) {
+            if (read.widgets != null) {
+                checkZIndexes(read.widgets, violations);
+            }
+            checkMembership(history, read, violations);
+        }
+
+        checkVersions(history, violations);
+
+        List<Widget> board = getWholeBoard().getPage().getContent();
+        checkZIndexes(board, violations);
+
+        Set<Long> expectedIds = new HashSet<>(history.createdAt.keySet());
+        expectedIds.removeAll(history.deletedAt.keySet());
+        if (!ids(board).equals(expectedIds)) {
+            violations.add("The board holds " + ids(board) + " instead of " + expectedIds);
+        }
+
+        assertThat(violations.stream().limit(20).collect(Collectors.toList()), is(empty()));
+    }
+
+    private static void checkZIndexes(List<Widget> widgets, List<String> violations) {
+        for (int i = 1; i < widgets.size(); i++) {
+            if (widgets.get(i).getZ() <= widgets.get(i - 1).getZ()) {
+                violations.add("Widgets " + widgets.get(i - 1).getId() + " and " + widgets.get(i).getId()
+                        + " are read with z-indexes " + widgets.get(i - 1).getZ() + " and " + widgets.get(i).getZ());
+            }
+        }
+    }
+
+    private static void checkMembership(History history, Read read, List<String> violations) {
+        Collection<Long> candidates = read.id == null ? history.createdAt.keySet() : List.of(read.id);
+
+        for (Long id : candidates) {
+            Span created = history.createdAt.get(id);
+            Span deleted = history.deletedAt.get(id);
+            Long deleting = history.firstDeleteInvokedAt.get(id);
+            boolean present = read.ids.contains(id);
+
+            if (created == null) {
+                continue;
+            }
+
+            boolean mustBePresent = created.end < read.start && (deleting == null || deleting > read.end);
+            boolean mustBeAbsent = created.start > read.end || (deleted != null && deleted.end < read.start);
+
+            if (mustBePresent && !present) {
+                violations.add("Widget " + id + " is missing from a read at version " + read.version);
+            }
+            if (mustBeAbsent && present) {
+                violations.add("Widget " + id + " is listed by a read at version " + read.version + " though it did not exist");
+            }
+        }
+    }
+
+    private static void checkVersions(History history, List<String> violations) {
+        List<Read> versionedReads = history.reads.stream().filter(read -> read.version != null).collect(Collectors.toList());
+        Map<Long, Set<Long>> idsByVersion = new HashMap<>();
+
+        for (Read read : versionedReads) {
+            Set<Long> ids = idsByVersion.putIfAbsent(read.version, read.ids);
+            if (ids != null && !ids.equals(read.ids)) {
+                violations.add("Two reads of version " + read.version + " list different widgets");
+            }
+        }
+
+        // Sorted by completion, the latest version completed before each read starts must not be newer than it
+        versionedReads.sort((first, second) -> Long.compare(first.end, second.end));
+        List<Read> byStart = new ArrayList<>(versionedReads);
+        byStart.sort((first, second) -> Long.compare(first.start, second.start));
+
+        int completed = 0;
+        long latestCompletedVersion = Long.MIN_VALUE;
+        for (Read read : byStart) {
+            while (completed < versionedReads.size() && versionedReads.get(completed).end < read.start) {
+                latestCompletedVersion = Math.max(latestCompletedVersion, versionedReads.get(completed).version);
+                completed++;
+            }
+            if (read.version < latestCompletedVersion) {
+                violations.add("Version " + read.version + " is read after version " + latestCompletedVersion + " was");
+            }
+        }
+    }
+
+    private VersionedPage getWholeBoard() {
+        try {
+            return widgetService.getAll(WHOLE_BOARD, null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Operations racing with a deletion may not find their widget
+    private static boolean attempt(WidgetOperation operation) throws InvalidParentException {
+        try {
+            operation.run();
+            return true;
+        } catch (WidgetNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static Set<Long> ids(List<Widget> widgets) {
+        return widgets.stream().map(Widget::getId).collect(Collectors.toSet());
+    }
+
+    @FunctionalInterface
+    private interface WidgetOperation {
+        Widget run() throws WidgetNotFoundException, InvalidParentException;
+    }
+
+    @Value
+    private static class Span {
+        long start;
+        long end;
+    }
+
+    @Value
+    private static class Read {
+        long start;
+        long end;
+        Long version;
+        // The widget read, or null for a read of the whole board
+        Long id;
+        Set<Long> ids;
+        List<Widget> widgets;
+    }
+
+    private static class History {
+        private final Map<Long, Span> createdAt = new ConcurrentHashMap<>();
+        private final Map<Long, Span> deletedAt = new ConcurrentHashMap<>();
+        private final Map<Long, Long> firstDeleteInvokedAt = new ConcurrentHashMap<>();
+        private final List<Long> createdIds = new CopyOnWriteArrayList<>();
+        private final Collection<Read> reads = new ConcurrentLinkedQueue<>();
+
+        Long randomCreatedId() {
+            int size = createdIds.size();
+            return size == 0 ? null : createdIds.get(ThreadLocalRandom.current().nextInt(size));
+        }
+
+        void created(Long id, long start, long end) {
+            createdAt.put(id, new Span(start, end));
+            createdIds.add(id);
+        }
+
+        long deleting(Long id) {
+            long invokedAt = System.nanoTime();
+            firstDeleteInvokedAt.merge(id, invokedAt, Math::min);
+            return invokedAt;
+        }
+
+        void deleted(Long id, long start, long end) {
+            deletedAt.put(id, new Span(start, end));
+        }
+
+        void read(Read read) {
+            reads.add(read);
+        }
+    }
+}
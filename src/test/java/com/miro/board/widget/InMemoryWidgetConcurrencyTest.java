@@ -0,0 +1,12 @@
+package com.miro.board.widget;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class InMemoryWidgetConcurrencyTest extends AbstractWidgetConcurrencyTest {
+
+    @Override
+    protected int getOperationsPerThread() {
+        return 200;
+    }
+}
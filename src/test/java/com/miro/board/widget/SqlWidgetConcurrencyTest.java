@@ -0,0 +1,12 @@
+package com.miro.board.widget;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {"use-sql-repository=true"})
+class SqlWidgetConcurrencyTest extends AbstractWidgetConcurrencyTest {
+
+    @Override
+    protected int getOperationsPerThread() {
+        return 150;
+    }
+}
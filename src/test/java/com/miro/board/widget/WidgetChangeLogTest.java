@@ -0,0 +1,131 @@
+package com.miro.board.widget;
+
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetChanges;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class WidgetChangeLogTest {
+
+    private static final long BUDGET_BYTES = 1024 * 1024;
+    // Room for the ids of four changes
+    private static final long SMALL_BUDGET_BYTES = 4 * 2 * Long.BYTES;
+
+    @Test
+    void eachChangedWidgetIsReturnedOnceAsItIsNow() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+        widgetService.create(WidgetFactory.buildWidgetRequest(3));
+        long version = widgetService.getChanges(null).getVersion();
+
+        widgetService.update(1L, WidgetFactory.buildWidgetRequest(5));
+        widgetService.update(1L, WidgetFactory.buildWidgetRequest(6));
+        // Shifts the second and third widgets up
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+
+        WidgetChanges changes = widgetService.getChanges(version);
+
+        assertThat(changes.isResync(), is(false));
+        assertThat(changes.getVersion(), is(version + 4));
+        assertThat(getBoard(changes.getWidgets()), contains("1@6", "2@3", "3@4", "4@2"));
+        assertThat(changes.getDeleted(), is(empty()));
+    }
+
+    @Test
+    void deletedWidgetsAreTombstonesUnlessCreatedSince() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        long version = widgetService.getChanges(null).getVersion();
+
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+        widgetService.delete(1L);
+        widgetService.delete(2L);
+
+        WidgetChanges changes = widgetService.getChanges(version);
+
+        assertThat(changes.getWidgets(), is(empty()));
+        assertThat(changes.getDeleted(), contains(1L));
+    }
+
+    @Test
+    void undoingADeletionReturnsTheWidgetInsteadOfItsTombstone() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        long version = widgetService.getChanges(null).getVersion();
+
+        widgetService.delete(1L);
+        widgetService.undo(1);
+
+        WidgetChanges changes = widgetService.getChanges(version);
+
+        assertThat(getBoard(changes.getWidgets()), contains("1@1"));
+        assertThat(changes.getDeleted(), is(empty()));
+    }
+
+    @Test
+    void aVersionOlderThanTheChangesKeptResyncsTheWholeBoard() throws Exception {
+        WidgetService widgetService = buildService(SMALL_BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        long version = widgetService.getChanges(null).getVersion();
+
+        // Drops the change of the version read, which was seen, and keeps those after it
+        for (int z = 2; z <= 5; z++) {
+            widgetService.create(WidgetFactory.buildWidgetRequest(z));
+        }
+        assertThat(widgetService.getChanges(version).isResync(), is(false));
+
+        widgetService.create(WidgetFactory.buildWidgetRequest(6));
+        WidgetChanges changes = widgetService.getChanges(version);
+
+        assertThat(changes.isResync(), is(true));
+        assertThat(getBoard(changes.getWidgets()), contains("1@1", "2@2", "3@3", "4@4", "5@5", "6@6"));
+        assertThat(widgetService.getChanges(version + 1).isResync(), is(false));
+    }
+
+    @Test
+    void replacingTheBoardResyncsEarlierVersions() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        long version = widgetService.getChanges(null).getVersion();
+
+        Iterator<Widget> iterator = List.of(Widget.builder().id(7L).lastModified(LocalDateTime.now()).width(1).height(1).z(3).build()).iterator();
+        widgetService.importAll(() -> iterator.hasNext() ? iterator.next() : null);
+
+        WidgetChanges changes = widgetService.getChanges(version);
+
+        assertThat(changes.isResync(), is(true));
+        assertThat(getBoard(changes.getWidgets()), contains("7@3"));
+        assertThat(widgetService.getChanges(changes.getVersion()).isResync(), is(false));
+        assertThat(widgetService.getChanges(changes.getVersion() + 1).isResync(), is(true));
+    }
+
+    // Every widget as id@z, by id
+    private static List<String> getBoard(List<Widget> widgets) {
+        return widgets.stream()
+                .sorted((widget, other) -> Long.compare(widget.getId(), other.getId()))
+                .map(widget -> widget.getId() + "@" + widget.getZ())
+                .collect(Collectors.toList());
+    }
+
+    private static WidgetService buildService(long changeLogBudgetBytes) {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        given(applicationContext.getBean("InMemoryRepository")).willReturn(new WidgetInMemoryRepository());
+        return new WidgetService(applicationContext, false, false, WidgetServiceFactory.UNDO_BUDGET_BYTES, changeLogBudgetBytes);
+    }
+}
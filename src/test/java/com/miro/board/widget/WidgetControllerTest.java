@@ -1,10 +1,18 @@
 package com.miro.board.widget;
 
 import com.miro.board.util.WidgetAssertionUtil;
+import com.miro.board.util.WidgetChangesResponse;
 import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetHistoryResponse;
+import com.miro.board.util.WidgetTileResponse;
 import com.miro.board.util.WidgetsPage;
+import com.miro.board.widget.model.Area;
+import com.miro.board.widget.model.HitTestRequest;
+import com.miro.board.widget.model.Point;
 import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetMoveRequest;
 import com.miro.board.widget.model.WidgetRequest;
+import com.miro.board.widget.model.WidgetScaleRequest;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -12,16 +20,25 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"use-sql-repository=true"})
@@ -126,6 +143,55 @@ class WidgetControllerTest {
         assertThat(widgets.get(4).getZ(), is(5));
     }
 
+    @Test
+    void moveAWidgetToTheFrontAndBack() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+
+        ResponseEntity<Widget> front = moveWidget(FIRST_ID, "front");
+        ResponseEntity<Widget> back = moveWidget(3L, "back");
+
+        assertThat(front.getStatusCode(), is(HttpStatus.OK));
+        assertThat(front.getBody().getZ(), is(4));
+        assertThat(back.getBody().getZ(), is(1));
+        assertThat(getWidget(2L).getBody().getZ(), is(2));
+    }
+
+    @Test
+    void moveAWidgetAboveAnotherOneWithoutShiftingWhenThereIsRoom() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+        createWidget(WidgetFactory.buildWidgetRequest(4));
+
+        ResponseEntity<Widget> response = moveWidget(3L, "above/" + FIRST_ID);
+
+        assertThat(response.getBody().getZ(), is(2));
+        assertThat(getWidget(2L).getBody().getZ(), is(3));
+    }
+
+    @Test
+    void moveAWidgetBelowAnotherOneOnAPackedBoard() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+
+        ResponseEntity<Widget> response = moveWidget(3L, "below/2");
+
+        assertThat(response.getBody().getZ(), is(2));
+        assertThat(getWidget(FIRST_ID).getBody().getZ(), is(1));
+        assertThat(getWidget(2L).getBody().getZ(), is(3));
+    }
+
+    @Test
+    void moveAWidgetAboveANotFoundWidget() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+
+        ResponseEntity<Widget> response = moveWidget(FIRST_ID, "above/2");
+
+        assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+
     @Test
     void getAWidget() {
         createWidget(WidgetFactory.buildWidgetRequest(Z_INDEX));
@@ -158,6 +224,47 @@ class WidgetControllerTest {
         assertThat(getResponse.getStatusCode(), is(HttpStatus.NOT_FOUND));
     }
 
+    @Test
+    void undoAndRedoAnInsertThatShiftedWidgets() {
+        createWidget(WidgetFactory.buildWidgetRequest(Z_INDEX));
+        createWidget(WidgetFactory.buildWidgetRequest(Z_INDEX));
+
+        ResponseEntity<WidgetHistoryResponse> undoResponse = changeHistory("undo", 1);
+
+        assertThat(undoResponse.getStatusCode(), is(HttpStatus.OK));
+        assertThat(undoResponse.getBody().getApplied(), is(1));
+        assertThat(undoResponse.getBody().getUndoable(), is(1));
+        assertThat(undoResponse.getBody().getRedoable(), is(1));
+        assertThat(getWidget(FIRST_ID).getBody().getZ(), is(Z_INDEX));
+        assertThat(getWidget(FIRST_ID + 1).getStatusCode(), is(HttpStatus.NOT_FOUND));
+
+        ResponseEntity<WidgetHistoryResponse> redoResponse = changeHistory("redo", 1);
+
+        assertThat(redoResponse.getBody().getApplied(), is(1));
+        assertThat(getWidget(FIRST_ID).getBody().getZ(), is(Z_INDEX + 1));
+        assertThat(getWidget(FIRST_ID + 1).getBody().getZ(), is(Z_INDEX));
+    }
+
+    @Test
+    void undoADeletionRestoresTheWidgetWithItsId() {
+        WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(Z_INDEX);
+        createWidget(widgetRequest);
+        deleteWidget(FIRST_ID);
+
+        changeHistory("undo", 1);
+
+        ResponseEntity<Widget> response = getWidget(FIRST_ID);
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        WidgetAssertionUtil.assertWidget(response.getBody(), widgetRequest, FIRST_ID);
+    }
+
+    @Test
+    void undoWithInvalidSteps() {
+        ResponseEntity<WidgetHistoryResponse> response = changeHistory("undo", 0);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
     @Test
     void getAllWidgets() {
         createWidget(WidgetFactory.buildWidgetRequest(Z_INDEX));
@@ -191,6 +298,13 @@ class WidgetControllerTest {
         assertThat(smallPageWidget.isLast(), is(false));
     }
 
+    @Test
+    void getAllWidgetsAtAVersionThatIsNotAvailable() {
+        ResponseEntity<WidgetsPage> response = restTemplate.getForEntity(getUrl("widgets?version=1"), WidgetsPage.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.GONE));
+    }
+
     @Test
     public void getAllWidgetsWithInvalidPageSize() {
         PageRequest pageRequest = PageRequest.of(0, 501);
@@ -200,6 +314,405 @@ class WidgetControllerTest {
         assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
     }
 
+    @Test
+    void getAllWidgetsSortedByProperty() {
+        createWidget(buildWidgetRequest(1, 30));
+        createWidget(buildWidgetRequest(2, 10));
+        createWidget(buildWidgetRequest(3, 20));
+
+        ResponseEntity<WidgetsPage> response = getWidgets(PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "x")));
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+
+        WidgetsPage widgetsPage = response.getBody();
+        assertThat(widgetsPage, is(notNullValue()));
+
+        List<Widget> widgets = widgetsPage.getContent();
+
+        assertThat(widgets.get(0).getId(), is(1L));
+        assertThat(widgets.get(1).getId(), is(3L));
+        assertThat(widgets.get(2).getId(), is(2L));
+    }
+
+    @Test
+    void widgetsSharingTheSortedValueAreOrderedByZIndexThenIdInTheDirectionOfTheSort() {
+        createWidget(buildWidgetRequest(1, 10));
+        createWidget(buildWidgetRequest(2, 10));
+        WidgetRequest inFrame = buildWidgetRequest(1, 10);
+        inFrame.setParentId(FIRST_ID);
+        createWidget(inFrame);
+
+        List<Widget> ascending = getWidgets(PageRequest.of(0, 10, Sort.by("x"))).getBody().getContent();
+        List<Widget> descending = getWidgets(PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "x"))).getBody().getContent();
+
+        assertThat(ascending.stream().map(Widget::getId).collect(Collectors.toList()), contains(1L, 3L, 2L));
+        assertThat(descending.stream().map(Widget::getId).collect(Collectors.toList()), contains(2L, 3L, 1L));
+    }
+
+    @Test
+    void getAllWidgetsWithInvalidSortProperty() {
+        ResponseEntity<WidgetsPage> response = getWidgets(PageRequest.of(0, 10, Sort.by("id")));
+
+        assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void getAllWidgetsWithinAZRange() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+        createWidget(WidgetFactory.buildWidgetRequest(5));
+        createWidget(WidgetFactory.buildWidgetRequest(7));
+
+        ResponseEntity<WidgetsPage> response = restTemplate.getForEntity(getUrl("widgets?zFrom=2&zTo=6&sort=z,DESC"), WidgetsPage.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+
+        WidgetsPage widgetsPage = response.getBody();
+        assertThat(widgetsPage, is(notNullValue()));
+        assertThat(widgetsPage.getTotalElements(), is(2));
+        assertThat(widgetsPage.getContent().get(0).getZ(), is(5));
+        assertThat(widgetsPage.getContent().get(1).getZ(), is(3));
+    }
+
+    @Test
+    void getAllWidgetsWithinAnInvalidZRange() {
+        ResponseEntity<WidgetsPage> reversed = restTemplate.getForEntity(getUrl("widgets?zFrom=6&zTo=2"), WidgetsPage.class);
+        ResponseEntity<WidgetsPage> sortedByX = restTemplate.getForEntity(getUrl("widgets?zFrom=2&sort=x"), WidgetsPage.class);
+
+        assertThat(reversed.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(sortedByX.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void countTheWidgetsBelowAZIndex() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+        createWidget(WidgetFactory.buildWidgetRequest(5));
+
+        assertThat(restTemplate.getForObject(getUrl("widgets/count?zTo=4"), Long.class), is(2L));
+        assertThat(restTemplate.getForObject(getUrl("widgets/count?zFrom=3&zTo=5"), Long.class), is(2L));
+        assertThat(restTemplate.getForObject(getUrl("widgets/count"), Long.class), is(3L));
+    }
+
+    @Test
+    void getTheTopmostWidgetAtAPoint() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        ResponseEntity<Widget> response = restTemplate.getForEntity(getUrl("widgets/at?x=35&y=45"), Widget.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(notNullValue()));
+        assertThat(response.getBody().getId(), is(2L));
+
+        ResponseEntity<Widget> notFoundResponse = restTemplate.getForEntity(getUrl("widgets/at?x=0&y=0"), Widget.class);
+
+        assertThat(notFoundResponse.getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    void getTheTopmostWidgetsAtSeveralPoints() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+
+        HitTestRequest hitTestRequest = new HitTestRequest();
+        hitTestRequest.setPoints(Arrays.asList(new Point(30, 40), new Point(0, 0)));
+
+        ResponseEntity<Widget[]> response = restTemplate.postForEntity(getUrl("widgets/at"), hitTestRequest, Widget[].class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+
+        Widget[] widgets = response.getBody();
+        assertThat(widgets, is(notNullValue()));
+        assertThat(widgets.length, is(2));
+        assertThat(widgets[0].getId(), is(FIRST_ID));
+        assertThat(widgets[1], is(nullValue()));
+    }
+
+    @Test
+    void moveSeveralWidgets() {
+        createWidget(buildWidgetRequest(1, 0));
+        createWidget(buildWidgetRequest(2, 100));
+        createWidget(buildWidgetRequest(3, 200));
+
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setIds(Arrays.asList(1L, 3L));
+        moveRequest.setDx(5);
+        moveRequest.setDy(-5);
+
+        ResponseEntity<Widget[]> response = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget[].class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(getWidget(FIRST_ID).getBody().getX(), is(5));
+        assertThat(getWidget(FIRST_ID).getBody().getY(), is(35));
+        assertThat(getWidget(FIRST_ID).getBody().getZ(), is(1));
+        assertThat(getWidget(2L).getBody().getX(), is(100));
+        assertThat(getWidget(3L).getBody().getX(), is(205));
+    }
+
+    @Test
+    void moveTheWidgetsWithinAnArea() {
+        createWidget(buildWidgetRequest(1, 0));
+        createWidget(buildWidgetRequest(2, 100));
+
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setArea(new Area(0, 0, 50, 100));
+        moveRequest.setDx(10);
+        moveRequest.setDy(0);
+
+        ResponseEntity<Widget[]> response = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget[].class);
+
+        assertThat(response.getBody().length, is(1));
+        assertThat(getWidget(FIRST_ID).getBody().getX(), is(10));
+        assertThat(getWidget(2L).getBody().getX(), is(100));
+    }
+
+    @Test
+    void moveWidgetsThatAreNotFound() {
+        createWidget(buildWidgetRequest(1, 0));
+
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setIds(Arrays.asList(1L, 2L));
+        moveRequest.setDx(10);
+        moveRequest.setDy(0);
+
+        ResponseEntity<Widget> response = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
+        assertThat(getWidget(FIRST_ID).getBody().getX(), is(0));
+    }
+
+    @Test
+    void moveWidgetsWithoutSelection() {
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setDx(10);
+        moveRequest.setDy(0);
+
+        ResponseEntity<Widget> response = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void scaleSeveralWidgets() {
+        createWidget(buildWidgetRequest(1, 40));
+
+        WidgetScaleRequest scaleRequest = new WidgetScaleRequest();
+        scaleRequest.setIds(Collections.singletonList(FIRST_ID));
+        scaleRequest.setOriginX(20);
+        scaleRequest.setOriginY(40);
+        scaleRequest.setFactorX(2.0);
+        scaleRequest.setFactorY(0.5);
+
+        ResponseEntity<Widget[]> response = restTemplate.postForEntity(getUrl("widgets/scale"), scaleRequest, Widget[].class);
+
+        Widget widget = response.getBody()[0];
+        assertThat(widget.getX(), is(60));
+        assertThat(widget.getY(), is(40));
+        assertThat(widget.getWidth(), is(40));
+        assertThat(widget.getHeight(), is(5));
+    }
+
+    @Test
+    void aFrameCarriesItsWidgetsWithoutWritingThem() {
+        createWidget(buildWidgetRequest(1, 0));
+        createWidget(buildWidgetRequest(2, 100));
+        Widget child = createWidget(buildChildRequest(FIRST_ID, 1, 5, 2)).getBody();
+        Widget secondChild = createWidget(buildChildRequest(FIRST_ID, null, 30, 40)).getBody();
+
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setIds(Collections.singletonList(FIRST_ID));
+        moveRequest.setDx(10);
+        moveRequest.setDy(0);
+
+        Widget[] moved = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget[].class).getBody();
+        moveWidget(FIRST_ID, "front");
+        WidgetsPage stacked = restTemplate.getForEntity(getUrl("widgets/stacked?size=10"), WidgetsPage.class).getBody();
+
+        assertThat(secondChild.getZ(), is(2));
+        assertThat(moved.length, is(1));
+        assertThat(getWidget(child.getId()).getBody().getLastModified(), is(child.getLastModified()));
+        assertThat(getWidget(child.getId()).getBody().getZ(), is(1));
+        assertThat(stacked.getContent().stream().map(Widget::getId).collect(Collectors.toList()),
+                contains(2L, FIRST_ID, child.getId(), secondChild.getId()));
+        assertThat(stacked.getContent().get(2).getX(), is(15));
+        assertThat(stacked.getContent().get(2).getY(), is(42));
+        assertThat(restTemplate.getForEntity(getUrl("widgets/at?x=16&y=43"), Widget.class).getBody().getId(), is(child.getId()));
+    }
+
+    @Test
+    void aFrameIsScaledWithItsWidgetsAndAWidgetSelectedWithItsFrameFollowsIt() {
+        createWidget(buildWidgetRequest(1, 0));
+        Widget child = createWidget(buildChildRequest(FIRST_ID, 1, 5, 2)).getBody();
+
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setIds(Arrays.asList(FIRST_ID, child.getId()));
+        moveRequest.setDx(10);
+        moveRequest.setDy(0);
+
+        Widget[] moved = restTemplate.postForEntity(getUrl("widgets/move"), moveRequest, Widget[].class).getBody();
+
+        assertThat(moved.length, is(1));
+        assertThat(getWidget(FIRST_ID).getBody().getX(), is(10));
+        assertThat(getWidget(child.getId()).getBody().getX(), is(5));
+
+        Widget[] scaled = restTemplate.postForEntity(getUrl("widgets/scale"), buildScaleRequest(Arrays.asList(FIRST_ID, child.getId()), 0, 40, 2.0),
+                Widget[].class).getBody();
+        Widget scaledFrame = getWidget(FIRST_ID).getBody();
+        Widget scaledChild = getWidget(child.getId()).getBody();
+
+        assertThat(scaled.length, is(2));
+        assertThat(List.of(scaledFrame.getX(), scaledFrame.getY(), scaledFrame.getWidth(), scaledFrame.getHeight()), contains(20, 40, 40, 20));
+        assertThat(List.of(scaledChild.getX(), scaledChild.getY(), scaledChild.getWidth(), scaledChild.getHeight()), contains(10, 4, 40, 20));
+
+        // Around the child's own position on the board, which is where it stays
+        restTemplate.postForEntity(getUrl("widgets/scale"), buildScaleRequest(Collections.singletonList(child.getId()), 30, 44, 0.5), Widget[].class);
+        Widget shrunkChild = getWidget(child.getId()).getBody();
+
+        assertThat(List.of(shrunkChild.getX(), shrunkChild.getY(), shrunkChild.getWidth(), shrunkChild.getHeight()), contains(10, 4, 20, 10));
+        assertThat(getWidget(FIRST_ID).getBody().getWidth(), is(40));
+    }
+
+    @Test
+    void framesAreNotNestedNorStackedAcrossAndTakeTheirWidgetsAlongWhenDeleted() {
+        createWidget(buildWidgetRequest(1, 0));
+        createWidget(buildWidgetRequest(2, 100));
+        Widget child = createWidget(buildChildRequest(FIRST_ID, 1, 5, 2)).getBody();
+
+        assertThat(createWidget(buildChildRequest(child.getId(), 1, 0, 0)).getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(updateWidget(2L, buildChildRequest(2L, 1, 0, 0)).getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(moveWidget(child.getId(), "above/2").getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+
+        deleteWidget(FIRST_ID);
+
+        assertThat(getWidget(child.getId()).getStatusCode(), is(HttpStatus.NOT_FOUND));
+        assertThat(getWidget(2L).getStatusCode(), is(HttpStatus.OK));
+    }
+
+    @Test
+    void exportTheBoard() {
+        createWidget(buildWidgetRequest(2, 0));
+        createWidget(buildWidgetRequest(1, 100));
+
+        ResponseEntity<String> response = restTemplate.getForEntity(getUrl("widgets/export"), String.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        String[] lines = response.getBody().split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], containsString("\"id\":2"));
+        assertThat(lines[1], containsString("\"id\":1"));
+    }
+
+    @Test
+    void importABoard() {
+        createWidget(buildWidgetRequest(1, 0));
+
+        String board = "{\"id\":5,\"width\":10,\"height\":10,\"x\":0,\"y\":0,\"z\":-3}\n"
+                + "{\"id\":7,\"width\":20,\"height\":20,\"x\":50,\"y\":50,\"z\":4}\n";
+
+        ResponseEntity<Void> response = importBoard(board);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.NO_CONTENT));
+        assertThat(getWidget(FIRST_ID).getStatusCode(), is(HttpStatus.NOT_FOUND));
+        assertThat(getWidget(5L).getBody().getZ(), is(-3));
+        assertThat(getWidget(7L).getBody().getLastModified(), is(notNullValue()));
+        assertThat(createWidget(buildWidgetRequest(1, 0)).getBody().getId(), is(8L));
+    }
+
+    @Test
+    void importABoardThatIsNotSortedByZIndex() {
+        createWidget(buildWidgetRequest(1, 0));
+
+        String board = "{\"id\":5,\"width\":10,\"height\":10,\"x\":0,\"y\":0,\"z\":4}\n"
+                + "{\"id\":7,\"width\":20,\"height\":20,\"x\":50,\"y\":50,\"z\":4}\n";
+
+        ResponseEntity<Void> response = importBoard(board);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(getWidget(FIRST_ID).getStatusCode(), is(HttpStatus.OK));
+    }
+
+    @Test
+    void importAMalformedBoard() {
+        ResponseEntity<Void> response = importBoard("{\"id\":5,\"width\":10,\n");
+
+        assertThat(response.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void getATileOfTheBoard() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        ResponseEntity<WidgetTileResponse> response = restTemplate.getForEntity(getUrl("widgets/tiles/10/0/0"), WidgetTileResponse.class);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+
+        WidgetTileResponse tile = response.getBody();
+        assertThat(tile, is(notNullValue()));
+        assertThat(tile.getWidgets().size(), is(2));
+        assertThat(tile.getWidgets().get(0).getId(), is(FIRST_ID));
+
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+
+        WidgetTileResponse updatedTile = restTemplate.getForEntity(getUrl("widgets/tiles/10/0/0"), WidgetTileResponse.class).getBody();
+        assertThat(updatedTile, is(notNullValue()));
+        assertThat(updatedTile.getWidgets().size(), is(3));
+        assertThat(updatedTile.getWidgets().get(0).getId(), is(3L));
+    }
+
+    @Test
+    void changesSinceAVersionHoldOnlyWhatChangedAfterIt() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+
+        WidgetChangesResponse fullBoard = getChanges("widgets/changes");
+        assertThat(fullBoard.isResync(), is(true));
+        assertThat(fullBoard.getWidgets().size(), is(3));
+
+        // Shifts every widget up, then deletes the third
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        deleteWidget(FIRST_ID + 2);
+
+        WidgetChangesResponse changes = getChanges("widgets/changes?since=" + fullBoard.getVersion());
+
+        assertThat(changes.isResync(), is(false));
+        assertThat(changes.getVersion() > fullBoard.getVersion(), is(true));
+        assertThat(changes.getWidgets().stream().map(Widget::getId).sorted().collect(Collectors.toList()), contains(FIRST_ID, FIRST_ID + 1, FIRST_ID + 3));
+        assertThat(changes.getDeleted(), contains(FIRST_ID + 2));
+
+        WidgetChangesResponse noChanges = getChanges("widgets/changes?since=" + changes.getVersion());
+        assertThat(noChanges.getVersion(), is(changes.getVersion()));
+        assertThat(noChanges.getWidgets().isEmpty(), is(true));
+        assertThat(noChanges.getDeleted().isEmpty(), is(true));
+
+        assertThat(getChanges("widgets/changes?since=1").isResync(), is(true));
+    }
+
+    private WidgetRequest buildWidgetRequest(int zIndex, int x) {
+        WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(zIndex);
+        widgetRequest.setX(x);
+        return widgetRequest;
+    }
+
+    private WidgetScaleRequest buildScaleRequest(List<Long> ids, int originX, int originY, double factor) {
+        WidgetScaleRequest scaleRequest = new WidgetScaleRequest();
+        scaleRequest.setIds(ids);
+        scaleRequest.setOriginX(originX);
+        scaleRequest.setOriginY(originY);
+        scaleRequest.setFactorX(factor);
+        scaleRequest.setFactorY(factor);
+        return scaleRequest;
+    }
+
+    private WidgetRequest buildChildRequest(Long parentId, Integer zIndex, int x, int y) {
+        WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(zIndex);
+        widgetRequest.setParentId(parentId);
+        widgetRequest.setX(x);
+        widgetRequest.setY(y);
+        return widgetRequest;
+    }
+
     private ResponseEntity<Widget> createWidget(WidgetRequest widgetRequest) {
         return restTemplate.postForEntity(getUrl("widgets"), widgetRequest, Widget.class);
     }
@@ -212,6 +725,27 @@ class WidgetControllerTest {
         return restTemplate.exchange(getUrl("widgets/" + id), HttpMethod.PUT, new HttpEntity<>(widgetRequest), Widget.class);
     }
 
+    private ResponseEntity<Widget> moveWidget(Long id, String layerOperation) {
+        return restTemplate.postForEntity(getUrl("widgets/" + id + "/" + layerOperation), null, Widget.class);
+    }
+
+    private ResponseEntity<WidgetHistoryResponse> changeHistory(String operation, int steps) {
+        return restTemplate.postForEntity(getUrl("widgets/" + operation + "?steps=" + steps), null, WidgetHistoryResponse.class);
+    }
+
+    private WidgetChangesResponse getChanges(String path) {
+        ResponseEntity<WidgetChangesResponse> response = restTemplate.getForEntity(getUrl(path), WidgetChangesResponse.class);
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        return response.getBody();
+    }
+
+    private ResponseEntity<Void> importBoard(String board) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(WidgetController.NDJSON));
+
+        return restTemplate.postForEntity(getUrl("widgets/import"), new HttpEntity<>(board, headers), Void.class);
+    }
+
     private ResponseEntity<Widget> deleteWidget(Long id) {
         return restTemplate.exchange(getUrl("widgets/" + id), HttpMethod.DELETE, null, Widget.class);
     }
@@ -219,6 +753,10 @@ class WidgetControllerTest {
     private ResponseEntity<WidgetsPage> getWidgets(Pageable pageable) {
         String path = String.format("widgets?page=%d&size=%d", pageable.getPageNumber(), pageable.getPageSize());
 
+        for (Sort.Order order : pageable.getSort()) {
+            path += String.format("&sort=%s,%s", order.getProperty(), order.getDirection());
+        }
+
         return restTemplate.getForEntity(getUrl(path), WidgetsPage.class);
     }
 
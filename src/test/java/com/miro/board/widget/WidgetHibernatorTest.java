@@ -0,0 +1,59 @@
+package com.miro.board.widget;
+
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationContext;
+
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class WidgetHibernatorTest {
+
+    private static final long IDLE_MILLIS = 50;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    private WidgetService widgetService;
+    private SimpleMeterRegistry meterRegistry;
+    private WidgetHibernator widgetHibernator;
+
+    @BeforeEach
+    void beforeEach(@TempDir Path directory) {
+        given(applicationContext.getBean("InMemoryRepository")).willReturn(new WidgetInMemoryRepository());
+        widgetService = WidgetServiceFactory.buildService(applicationContext);
+        meterRegistry = new SimpleMeterRegistry();
+        widgetHibernator = new WidgetHibernator(widgetService, meterRegistry, IDLE_MILLIS, directory.toString());
+    }
+
+    @Test
+    void theBoardHibernatesOnceIdleAndWakesOnTheNextRequest() throws Exception {
+        Widget widget = widgetService.create(WidgetFactory.buildWidgetRequest(1));
+
+        assertThat(widgetHibernator.check(), is(false));
+        Thread.sleep(IDLE_MILLIS * 2);
+        assertThat(widgetHibernator.check(), is(true));
+        assertThat(meterRegistry.get("board.hibernation.hibernating").gauge().value(), is(1.0));
+
+        assertThat(widgetService.get(widget.getId()).getZ(), is(1));
+        assertThat(meterRegistry.get("board.hibernation.wake").timer().count(), is(1L));
+        assertThat(meterRegistry.get("board.hibernation.hibernate").timer().count(), is(1L));
+
+        // The request counts as an access, so the idle period starts over
+        assertThat(widgetHibernator.check(), is(false));
+        assertThat(widgetService.isHibernating(), is(false));
+    }
+}
@@ -0,0 +1,185 @@
+package com.miro.board.widget;
+
+import com.miro.board.exception.InvalidHistoryStepsException;
+import com.miro.board.exception.WidgetNotFoundException;
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetHistory;
+import com.miro.board.widget.model.WidgetMoveRequest;
+import com.miro.board.widget.repository.WidgetInMemoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class WidgetJournalTest {
+
+    private static final long BUDGET_BYTES = 8 * 1024 * 1024;
+
+    @Test
+    void undoAnInsertRevertsTheZIndexShiftsItCaused() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+
+        // Shifts the first two widgets up
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        assertThat(getBoard(widgetService), is(List.of("3@1", "1@2", "2@3")));
+
+        WidgetHistory history = widgetService.undo(1);
+
+        assertThat(getBoard(widgetService), is(List.of("1@1", "2@2")));
+        assertThat(history.getApplied(), is(1));
+        assertThat(history.getUndoable(), is(2));
+        assertThat(history.getRedoable(), is(1));
+
+        widgetService.redo(1);
+
+        assertThat(getBoard(widgetService), is(List.of("3@1", "1@2", "2@3")));
+    }
+
+    @Test
+    void undoADeletionRestoresTheWidgetWithItsId() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        Widget widget = widgetService.create(WidgetFactory.buildWidgetRequest(5));
+        widgetService.delete(widget.getId());
+
+        widgetService.undo(1);
+
+        Widget restoredWidget = widgetService.get(widget.getId());
+        assertThat(restoredWidget.getZ(), is(5));
+        assertThat(restoredWidget.getWidth(), is(widget.getWidth()));
+        assertThat(restoredWidget.getX(), is(widget.getX()));
+
+        widgetService.redo(1);
+
+        assertThrows(WidgetNotFoundException.class, () -> widgetService.get(widget.getId()));
+    }
+
+    @Test
+    void undoAndRedoSeveralOperations() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+        widgetService.update(1L, WidgetFactory.buildWidgetRequest(2));
+        widgetService.move(buildMoveRequest(List.of(1L, 2L), 10));
+        widgetService.moveToBack(2L);
+        assertThat(getBoard(widgetService), is(List.of("2@1", "1@2")));
+
+        widgetService.undo(3);
+
+        assertThat(getBoard(widgetService), is(List.of("1@1", "2@2")));
+        assertThat(widgetService.get(1L).getX(), is(30));
+
+        WidgetHistory history = widgetService.redo(10);
+
+        assertThat(history.getApplied(), is(3));
+        assertThat(getBoard(widgetService), is(List.of("2@1", "1@2")));
+        assertThat(widgetService.get(1L).getX(), is(40));
+    }
+
+    @Test
+    void aNewOperationDropsTheOperationsUndone() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.create(WidgetFactory.buildWidgetRequest(2));
+
+        widgetService.undo(1);
+        widgetService.create(WidgetFactory.buildWidgetRequest(7));
+
+        WidgetHistory history = widgetService.redo(1);
+        assertThat(history.getApplied(), is(0));
+        assertThat(history.getUndoable(), is(2));
+        assertThat(history.getRedoable(), is(0));
+    }
+
+    @Test
+    void failedOperationsAreNotRecorded() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        widgetService.undo(1);
+
+        assertThrows(WidgetNotFoundException.class, () -> widgetService.update(5L, WidgetFactory.buildWidgetRequest(1)));
+
+        assertThat(widgetService.getHistory().getRedoable(), is(1));
+        assertThat(widgetService.getHistory().getUndoable(), is(0));
+    }
+
+    @Test
+    void theOldestOperationsAreDroppedToStayWithinTheBudget() throws Exception {
+        long budgetBytes = 4096;
+        WidgetService widgetService = buildService(budgetBytes);
+
+        for (int i = 0; i < 200; i++) {
+            widgetService.create(WidgetFactory.buildWidgetRequest(null));
+        }
+
+        WidgetHistory history = widgetService.getHistory();
+        assertThat(history.getSizeInBytes(), is(lessThanOrEqualTo(budgetBytes)));
+        // Each creation takes 8 longs: its frame, the kind of change and the widget
+        assertThat(history.getUndoable(), is((int) (budgetBytes / Long.BYTES / 8)));
+    }
+
+    @Test
+    void anOperationLargerThanTheBudgetClearsTheHistory() throws Exception {
+        WidgetService widgetService = buildService(512);
+
+        for (int i = 0; i < 100; i++) {
+            widgetService.create(WidgetFactory.buildWidgetRequest(1));
+        }
+
+        // The last creation shifted 99 widgets, more than the 64 longs of the budget
+        assertThat(widgetService.getHistory().getUndoable(), is(0));
+    }
+
+    @Test
+    void importingABoardClearsTheHistory() throws Exception {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+        widgetService.create(WidgetFactory.buildWidgetRequest(1));
+
+        Iterator<Widget> widgets = List.of(Widget.builder().id(9L).width(1).height(1).z(3).build()).iterator();
+        widgetService.importAll(() -> widgets.hasNext() ? widgets.next() : null);
+
+        assertThat(widgetService.undo(1).getApplied(), is(0));
+        assertThat(getBoard(widgetService), is(List.of("9@3")));
+    }
+
+    @Test
+    void undoWithoutSteps() {
+        WidgetService widgetService = buildService(BUDGET_BYTES);
+
+        assertThrows(InvalidHistoryStepsException.class, () -> widgetService.undo(0));
+    }
+
+    private static WidgetMoveRequest buildMoveRequest(List<Long> ids, int dx) {
+        WidgetMoveRequest request = new WidgetMoveRequest();
+        request.setIds(ids);
+        request.setDx(dx);
+        request.setDy(0);
+        return request;
+    }
+
+    // Every widget as id@z, in z order
+    private static List<String> getBoard(WidgetService widgetService) {
+        return widgetService.getAll(PageRequest.of(0, 100)).getContent().stream()
+                .map(widget -> widget.getId() + "@" + widget.getZ())
+                .collect(Collectors.toList());
+    }
+
+    private static WidgetService buildService(long budgetBytes) {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        given(applicationContext.getBean("InMemoryRepository")).willReturn(new WidgetInMemoryRepository());
+        return new WidgetService(applicationContext, false, false, budgetBytes, WidgetServiceFactory.CHANGE_LOG_BUDGET_BYTES);
+    }
+}
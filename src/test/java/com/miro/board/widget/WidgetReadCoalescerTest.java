@@ -0,0 +1,120 @@
+package com.miro.board.widget;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miro.board.widget.WidgetReadCoalescer.SerializedPage;
+import com.miro.board.widget.model.Widget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WidgetReadCoalescerTest {
+
+    private static final long WIDGET_ID = 1;
+
+    @Mock
+    private WidgetService widgetService;
+
+    private WidgetReadCoalescer widgetReadCoalescer;
+
+    @BeforeEach
+    void beforeEach() {
+        widgetReadCoalescer = new WidgetReadCoalescer(widgetService, new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void concurrentIdenticalReadsShareOneReadAndBody() throws Exception {
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch readAllowed = new CountDownLatch(1);
+
+        given(widgetService.getCurrentVersion()).willReturn(OptionalLong.of(3));
+        given(widgetService.find(WIDGET_ID)).willAnswer(invocation -> {
+            readStarted.countDown();
+            readAllowed.await(5, TimeUnit.SECONDS);
+            return Optional.of(buildWidget());
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CompletableFuture<Optional<byte[]>>> firstRead = executor.submit(() -> widgetReadCoalescer.get(WIDGET_ID));
+            readStarted.await(5, TimeUnit.SECONDS);
+
+            CompletableFuture<Optional<byte[]>> secondRead = widgetReadCoalescer.get(WIDGET_ID);
+            assertThat(secondRead.isDone(), is(false));
+
+            readAllowed.countDown();
+
+            byte[] firstBody = firstRead.get(5, TimeUnit.SECONDS).join().orElseThrow();
+            byte[] secondBody = secondRead.get(5, TimeUnit.SECONDS).orElseThrow();
+            assertThat(secondBody, is(sameInstance(firstBody)));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(widgetService, times(1)).find(WIDGET_ID);
+    }
+
+    @Test
+    void completedReadsAreNotShared() {
+        given(widgetService.getCurrentVersion()).willReturn(OptionalLong.of(3));
+        given(widgetService.find(WIDGET_ID)).willReturn(Optional.of(buildWidget()));
+
+        byte[] firstBody = widgetReadCoalescer.get(WIDGET_ID).join().orElseThrow();
+        byte[] secondBody = widgetReadCoalescer.get(WIDGET_ID).join().orElseThrow();
+
+        assertThat(secondBody, is(not(sameInstance(firstBody))));
+        verify(widgetService, times(2)).find(WIDGET_ID);
+    }
+
+    @Test
+    void readsOfAnUnversionedBoardAreNotCoalesced() {
+        given(widgetService.getCurrentVersion()).willReturn(OptionalLong.empty());
+        given(widgetService.find(WIDGET_ID)).willReturn(Optional.empty());
+
+        assertThat(widgetReadCoalescer.get(WIDGET_ID).join().isPresent(), is(false));
+    }
+
+    @Test
+    void getAllAtAVersionThatIsNoLongerAvailable() throws Exception {
+        PageRequest pageable = PageRequest.of(0, 10);
+
+        given(widgetService.getAllAtVersion(pageable, 7)).willReturn(Optional.empty());
+
+        SerializedPage page = widgetReadCoalescer.getAll(pageable, 7L);
+
+        assertThat(page.getVersion(), is(7L));
+        assertThat(page.getBody().join().isPresent(), is(false));
+    }
+
+    private Widget buildWidget() {
+        return Widget.builder()
+                .id(WIDGET_ID)
+                .width(10)
+                .height(10)
+                .x(0)
+                .y(0)
+                .z(1)
+                .build();
+    }
+}
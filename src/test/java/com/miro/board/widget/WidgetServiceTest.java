@@ -1,9 +1,16 @@
 package com.miro.board.widget;
 
+import com.miro.board.exception.BoardVersionNotFoundException;
+import com.miro.board.exception.InvalidImportException;
+import com.miro.board.exception.InvalidParentException;
 import com.miro.board.exception.WidgetNotFoundException;
 import com.miro.board.util.WidgetAssertionUtil;
 import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetServiceFactory;
+import com.miro.board.widget.model.Area;
+import com.miro.board.widget.model.VersionedPage;
 import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetMoveRequest;
 import com.miro.board.widget.model.WidgetRequest;
 import com.miro.board.widget.repository.WidgetRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,12 +24,15 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -52,14 +62,14 @@ class WidgetServiceTest {
     @BeforeEach
     void beforeAll() {
         given(applicationContext.getBean("InMemoryRepository")).willReturn(widgetRepository);
-        widgetService = new WidgetService(applicationContext, false);
+        widgetService = WidgetServiceFactory.buildService(applicationContext);
     }
 
     @Test
-    void createAWidgetWithoutMovingOtherWidgets() {
-        Widget expectedWidget = new Widget();
+    void createAWidgetWithoutMovingOtherWidgets() throws InvalidParentException {
+        Widget expectedWidget = Widget.builder().id(WIDGET_ID).build();
 
-        given(widgetRepository.getWidgetsFromZIndex(Z_INDEX)).willReturn(Collections.emptyList());
+        given(widgetRepository.getZIndexRun(null, Z_INDEX, null)).willReturn(Collections.emptyList());
         given(widgetRepository.save(any())).willReturn(expectedWidget);
 
         WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(Z_INDEX);
@@ -67,10 +77,10 @@ class WidgetServiceTest {
         Widget actualWidget = widgetService.create(widgetRequest);
 
         assertThat(actualWidget, is(expectedWidget));
-        verify(widgetRepository).getWidgetsFromZIndex(Z_INDEX);
+        verify(widgetRepository).getZIndexRun(null, Z_INDEX, null);
         verify(widgetRepository).save(widgetArgumentCaptor.capture());
-        verify(widgetRepository, times(0)).increaseZIndex(anyList());
-        verify(widgetRepository, times(0)).getMaxZIndex();
+        verify(widgetRepository, times(0)).increaseZIndexRun(any(), anyInt(), anyInt());
+        verify(widgetRepository, times(0)).getMaxZIndex(null);
 
         Widget savedWidget = widgetArgumentCaptor.getValue();
 
@@ -78,24 +88,25 @@ class WidgetServiceTest {
     }
 
     @Test
-    void createAWidgetWithExistentZIndexMovesOtherWidgets() {
-        List<Widget> widgetsFromZIndex = Arrays.asList(buildWidget(2L, 2), buildWidget(3L, 3));
-        given(widgetRepository.getWidgetsFromZIndex(Z_INDEX)).willReturn(widgetsFromZIndex);
+    void createAWidgetWithExistentZIndexMovesOtherWidgets() throws InvalidParentException {
+        given(widgetRepository.getZIndexRun(null, Z_INDEX, null)).willReturn(Arrays.asList(2L, 3L));
+        given(widgetRepository.save(any())).willReturn(Widget.builder().id(WIDGET_ID).build());
 
         WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(Z_INDEX);
 
         widgetService.create(widgetRequest);
 
-        verify(widgetRepository).increaseZIndex(Arrays.asList(2L, 3L));
+        verify(widgetRepository).increaseZIndexRun(null, Z_INDEX, Z_INDEX + 1);
     }
 
     @Test
-    void createAWidgetWithoutZIndexMovesToTheForeground() {
+    void createAWidgetWithoutZIndexMovesToTheForeground() throws InvalidParentException {
         int maxZIndex = 5;
         int nextZIndex = maxZIndex + 1;
 
-        given(widgetRepository.getWidgetsFromZIndex(nextZIndex)).willReturn(Collections.emptyList());
-        given(widgetRepository.getMaxZIndex()).willReturn(maxZIndex);
+        given(widgetRepository.getZIndexRun(null, nextZIndex, null)).willReturn(Collections.emptyList());
+        given(widgetRepository.getMaxZIndex(null)).willReturn(maxZIndex);
+        given(widgetRepository.save(any())).willReturn(Widget.builder().id(WIDGET_ID).build());
 
         WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(Z_INDEX);
         widgetRequest.setZ(null);
@@ -111,11 +122,11 @@ class WidgetServiceTest {
     }
 
     @Test
-    void updateAWidgetAndItIsFound() throws WidgetNotFoundException {
-        Widget expectedWidget = new Widget();
+    void updateAWidgetAndItIsFound() throws WidgetNotFoundException, InvalidParentException {
+        Widget expectedWidget = Widget.builder().id(WIDGET_ID).build();
 
-        given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(new Widget()));
-        given(widgetRepository.getWidgetsFromZIndex(Z_INDEX)).willReturn(Collections.emptyList());
+        given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(Widget.builder().id(WIDGET_ID).build()));
+        given(widgetRepository.getZIndexRun(null, Z_INDEX, WIDGET_ID)).willReturn(Collections.emptyList());
         given(widgetRepository.save(any())).willReturn(expectedWidget);
 
         WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(Z_INDEX);
@@ -123,7 +134,7 @@ class WidgetServiceTest {
         Widget actualWidget = widgetService.update(WIDGET_ID, widgetRequest);
 
         assertThat(actualWidget, is(expectedWidget));
-        verify(widgetRepository).getWidgetsFromZIndex(Z_INDEX);
+        verify(widgetRepository).getZIndexRun(null, Z_INDEX, WIDGET_ID);
         verify(widgetRepository).save(widgetArgumentCaptor.capture());
 
         Widget savedWidget = widgetArgumentCaptor.getValue();
@@ -131,6 +142,106 @@ class WidgetServiceTest {
         WidgetAssertionUtil.assertWidget(savedWidget, widgetRequest, WIDGET_ID);
     }
 
+    @Test
+    void moveAWidgetAboveAnotherOneIntoAFreeZIndex() throws WidgetNotFoundException, InvalidParentException {
+        given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(buildWidget(WIDGET_ID, 7)));
+        given(widgetRepository.findById(1L)).willReturn(Optional.of(buildWidget(1L, 3)));
+        given(widgetRepository.findByParentIdAndZ(null, 4)).willReturn(Optional.empty());
+        given(widgetRepository.save(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        Widget movedWidget = widgetService.moveAbove(WIDGET_ID, 1L);
+
+        assertThat(movedWidget.getZ(), is(4));
+        verify(widgetRepository, times(0)).getZIndexRun(any(), anyInt(), any());
+        verify(widgetRepository, times(0)).increaseZIndexRun(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void moveAWidgetBelowAnotherOneShiftsItWhenThereIsNoRoom() throws WidgetNotFoundException, InvalidParentException {
+        given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(buildWidget(WIDGET_ID, 7)));
+        given(widgetRepository.findById(1L)).willReturn(Optional.of(buildWidget(1L, 3)));
+        given(widgetRepository.findByParentIdAndZ(null, 2)).willReturn(Optional.of(buildWidget(3L, 2)));
+        given(widgetRepository.getZIndexRun(null, 3, WIDGET_ID)).willReturn(Collections.singletonList(1L));
+        given(widgetRepository.save(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        Widget movedWidget = widgetService.moveBelow(WIDGET_ID, 1L);
+
+        assertThat(movedWidget.getZ(), is(3));
+        verify(widgetRepository).increaseZIndexRun(null, 3, 3);
+    }
+
+    @Test
+    void moveAWidgetToTheFrontWhenItIsAlreadyThere() throws WidgetNotFoundException {
+        Widget widget = buildWidget(WIDGET_ID, 7);
+
+        given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(widget));
+        given(widgetRepository.getMaxZIndex(null)).willReturn(7);
+
+        assertThat(widgetService.moveToFront(WIDGET_ID), is(widget));
+        verify(widgetRepository, times(0)).save(any());
+    }
+
+    @Test
+    void moveSeveralWidgetsInASingleBatch() throws WidgetNotFoundException {
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setIds(Arrays.asList(1L, WIDGET_ID));
+        moveRequest.setDx(5);
+        moveRequest.setDy(0);
+
+        given(widgetRepository.findAllById(Arrays.asList(1L, WIDGET_ID))).willReturn(Arrays.asList(buildWidget(1L, 1), buildWidget(WIDGET_ID, 2)));
+        given(widgetRepository.saveAll(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+
+        List<Widget> movedWidgets = widgetService.move(moveRequest);
+
+        assertThat(movedWidgets.get(0).getX(), is(5));
+        assertThat(movedWidgets.get(1).getZ(), is(2));
+        verify(widgetRepository).saveAll(anyList());
+        verify(widgetRepository, times(0)).save(any());
+    }
+
+    @Test
+    void moveTheWidgetsWithinAnAreaLeavesOutAWidgetReachingPastTheLargestInt() throws WidgetNotFoundException {
+        WidgetMoveRequest moveRequest = new WidgetMoveRequest();
+        moveRequest.setArea(new Area(0, 0, 50, 50));
+        moveRequest.setDx(5);
+        moveRequest.setDy(0);
+
+        Widget reachingPastTheLargestInt = Widget.builder().id(1L).x(10).y(0).width(Integer.MAX_VALUE).height(10).z(1).build();
+        Widget endingOnTheEdge = Widget.builder().id(WIDGET_ID).x(40).y(40).width(10).height(10).z(2).build();
+        given(widgetRepository.findAllIntersecting(0, 0, 50, 50, 0)).willReturn(Arrays.asList(reachingPastTheLargestInt, endingOnTheEdge));
+        given(widgetRepository.saveAll(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+
+        List<Widget> movedWidgets = widgetService.move(moveRequest);
+
+        assertThat(movedWidgets.size(), is(1));
+        assertThat(movedWidgets.get(0).getId(), is(WIDGET_ID));
+        assertThat(movedWidgets.get(0).getX(), is(45));
+    }
+
+    @Test
+    void importABoardReplacesAllWidgets() throws Exception {
+        Iterator<Widget> widgets = Arrays.asList(buildWidget(3L, 1), buildWidget(1L, 2)).iterator();
+
+        int importedWidgets = widgetService.importAll(() -> widgets.hasNext() ? widgets.next() : null);
+
+        assertThat(importedWidgets, is(2));
+        verify(widgetRepository).replaceAll(anyList());
+    }
+
+    @Test
+    void importABoardWithDuplicatedIds() {
+        Iterator<Widget> widgets = Arrays.asList(buildWidget(3L, 1), buildWidget(1L, 2), buildWidget(3L, 4)).iterator();
+
+        InvalidImportException exception = assertThrows(
+                InvalidImportException.class,
+                () -> widgetService.importAll(() -> widgets.hasNext() ? widgets.next() : null),
+                "InvalidImportException was expected"
+        );
+
+        assertThat(exception.getMessage(), is("Line 3: Id 3 is not unique"));
+        verify(widgetRepository, times(0)).replaceAll(anyList());
+    }
+
     @Test
     void updateAWidgetAndItIsNotFound() {
         given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.empty());
@@ -146,7 +257,7 @@ class WidgetServiceTest {
 
     @Test
     void deleteAWidgetAndItIsFound() throws WidgetNotFoundException {
-        Widget expectedWidget = new Widget();
+        Widget expectedWidget = Widget.builder().id(WIDGET_ID).build();
 
         given(widgetRepository.findById(WIDGET_ID)).willReturn(Optional.of(expectedWidget));
 
@@ -189,22 +300,72 @@ class WidgetServiceTest {
         );
     }
 
+    @Test
+    void getTheTopmostWidgetAtAPoint() throws WidgetNotFoundException {
+        Widget expectedWidget = new Widget();
+
+        given(widgetRepository.findAllContainingPoint(1, 2, PageRequest.of(0, 1))).willReturn(Collections.singletonList(expectedWidget));
+
+        assertThat(widgetService.getAt(1, 2), is(expectedWidget));
+    }
+
+    @Test
+    void getTheTopmostWidgetAtAPointAndThereIsNone() {
+        given(widgetRepository.findAllContainingPoint(1, 2, PageRequest.of(0, 1))).willReturn(Collections.emptyList());
+
+        assertThrows(
+                WidgetNotFoundException.class,
+                () -> widgetService.getAt(1, 2),
+                "WidgetNotFoundException was expected"
+        );
+    }
+
     @Test
     void getAllWidgets() {
         PageRequest pageable = PageRequest.of(0, 10);
         Page<Widget> expectedWidgets = new PageImpl<>(new ArrayList<>(), pageable, 20);
 
-        given(widgetRepository.findAll(pageable)).willReturn(expectedWidgets);
+        // Sorted by z-index by default, as the in-memory board is
+        given(widgetRepository.findAll(PageRequest.of(0, 10, Sort.by("z", "id")))).willReturn(expectedWidgets);
 
         Page<Widget> actualWidgets = widgetService.getAll(pageable);
 
         assertThat(actualWidgets, is(expectedWidgets));
     }
 
+    @Test
+    void getAllWidgetsAtTheCurrentVersion() throws Exception {
+        PageRequest pageable = PageRequest.of(0, 10);
+        Page<Widget> expectedWidgets = new PageImpl<>(new ArrayList<>(), pageable, 20);
+
+        given(widgetRepository.retainCurrentVersion()).willReturn(OptionalLong.of(7));
+        given(widgetRepository.findAllAtVersion(PageRequest.of(0, 10, Sort.by("z", "id")), 7)).willReturn(Optional.of(expectedWidgets));
+
+        VersionedPage versionedPage = widgetService.getAll(pageable, null);
+
+        assertThat(versionedPage.getPage(), is(expectedWidgets));
+        assertThat(versionedPage.getVersion(), is(7L));
+    }
+
+    @Test
+    void getAllWidgetsAtAVersionThatIsNoLongerAvailable() {
+        PageRequest pageable = PageRequest.of(0, 10);
+
+        given(widgetRepository.findAllAtVersion(PageRequest.of(0, 10, Sort.by("z", "id")), 7)).willReturn(Optional.empty());
+
+        assertThrows(
+                BoardVersionNotFoundException.class,
+                () -> widgetService.getAll(pageable, 7L),
+                "BoardVersionNotFoundException was expected"
+        );
+    }
+
     private Widget buildWidget(long id, int zIndex) {
         return Widget.builder()
                 .id(id)
+                .width(10)
+                .height(10)
                 .z(zIndex)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.miro.board.widget;
+
+import com.miro.board.BoardApplication;
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.widget.model.Widget;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Throughput of the widget service with each repository as the number of threads grows, for a
+ * read-mostly and a write-heavy workload, so changes to the locking model can be measured. Run the
+ * AbstractWidgetConcurrencyTest suites along with it to check they are still correct.
+ *
+ * Excluded from the default build, run it with: mvn test -Pbenchmark
+ * */
+@Tag("benchmark")
+class WidgetThroughputTest {
+
+    private static final int WIDGETS = 10_000;
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+    private static final int[] WRITE_PERCENTAGES = {5, 50};
+    private static final Duration WARM_UP = Duration.ofSeconds(2);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(5);
+
+    @Test
+    void throughputPerThreadCount() throws Exception {
+        System.out.printf("%-10s %7s %7s %12s%n", "repository", "writes", "threads", "ops/s");
+
+        for (String repository : List.of("in-memory", "sql", "tiered")) {
+            try (ConfigurableApplicationContext context = start(repository)) {
+                WidgetService widgetService = context.getBean(WidgetService.class);
+
+                for (int writePercentage : WRITE_PERCENTAGES) {
+                    for (int threads : THREADS) {
+                        seedBoard(widgetService);
+                        run(widgetService, threads, writePercentage, WARM_UP);
+                        long operations = run(widgetService, threads, writePercentage, MEASUREMENT);
+
+                        System.out.printf("%-10s %6d%% %7d %12.0f%n",
+                                repository, writePercentage, threads, operations / (double) MEASUREMENT.toSeconds());
+                    }
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String repository) {
+        return new SpringApplicationBuilder(BoardApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "use-sql-repository=" + repository.equals("sql"),
+                        "use-tiered-repository=" + repository.equals("tiered"),
+                        "logging.level.root=WARN"
+                )
+                .run();
+    }
+
+    private static void seedBoard(WidgetService widgetService) throws Exception {
+        List<Widget> widgets = new ArrayList<>();
+        for (long id = 1; id <= WIDGETS; id++) {
+            widgets.add(Widget.builder()
+                    .id(id)
+                    .lastModified(LocalDateTime.now())
+                    .width(10)
+                    .height(10)
+                    .x((int) id * 10)
+                    .y(0)
+                    .z((int) id * 2)
+                    .build());
+        }
+
+        Iterator<Widget> iterator = widgets.iterator();
+        widgetService.importAll(() -> iterator.hasNext() ? iterator.next() : null);
+    }
+
+    private static long run(WidgetService widgetService, int threads, int writePercentage, Duration duration) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    long deadline = System.nanoTime() + duration.toNanos();
+                    long operations = 0;
+
+                    while (System.nanoTime() < deadline) {
+                        runRandomOperation(widgetService, writePercentage);
+                        operations++;
+                    }
+
+                    return operations;
+                }));
+            }
+
+            long operations = 0;
+            for (Future<Long> result : results) {
+                operations += result.get();
+            }
+            return operations;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Writes are updates, so the size of the board stays the same
+    private static void runRandomOperation(WidgetService widgetService, int writePercentage) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextLong(1, WIDGETS + 1);
+        int operation = random.nextInt(100);
+
+        if (operation < writePercentage) {
+            widgetService.update(id, WidgetFactory.buildWidgetRequest(random.nextInt(1, WIDGETS * 2)));
+        } else if (operation % 2 == 0) {
+            widgetService.get(id);
+        } else {
+            widgetService.getAll(PageRequest.of(random.nextInt(WIDGETS / 50), 50, Sort.by("z")), null);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.miro.board.widget;
+
+import com.miro.board.exception.InvalidTileException;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetTile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WidgetTileServiceTest {
+
+    private static final int MAX_ZOOM = WidgetTileService.MAX_ZOOM;
+
+    private WidgetTileService widgetTileService;
+
+    @Mock
+    private WidgetService widgetService;
+
+    @BeforeEach
+    void beforeEach() {
+        widgetTileService = new WidgetTileService(widgetService);
+    }
+
+    @Test
+    void registersItselfAsMutationListener() {
+        verify(widgetService).addMutationListener(widgetTileService);
+    }
+
+    @Test
+    void buildATileWithTheVisibleWidgetsInDrawingOrder() throws InvalidTileException {
+        given(widgetService.getAllIntersecting(256, 0, 512, 256, 1))
+                .willReturn(Arrays.asList(buildWidget(1L, 300, 10), buildWidget(2L, 260, 20)));
+        given(widgetService.countIntersecting(256, 0, 512, 256)).willReturn(3L);
+
+        WidgetTile tile = widgetTileService.getTile(MAX_ZOOM, 1, 0);
+
+        assertThat(tile.getSize(), is(256L));
+        assertThat(tile.getWidgets().size(), is(2));
+        assertThat(tile.getWidgets().get(0).getId(), is(1L));
+        assertThat(tile.getWidgets().get(1).getId(), is(2L));
+        assertThat(tile.getHiddenWidgets(), is(1L));
+    }
+
+    @Test
+    void tilesAreCachedUntilAnOverlappingWidgetChanges() throws InvalidTileException {
+        given(widgetService.getAllIntersecting(0, 0, 256, 256, 1)).willReturn(Collections.emptyList());
+
+        widgetTileService.getTile(MAX_ZOOM, 0, 0);
+        widgetTileService.getTile(MAX_ZOOM, 0, 0);
+
+        widgetTileService.onZIndexIncreased(Collections.singletonList(1L));
+        widgetTileService.onSaved(null, buildWidget(1L, 1000, 1000));
+        widgetTileService.getTile(MAX_ZOOM, 0, 0);
+
+        verify(widgetService, times(1)).getAllIntersecting(0, 0, 256, 256, 1);
+
+        widgetTileService.onDeleted(buildWidget(2L, 10, 10));
+        widgetTileService.getTile(MAX_ZOOM, 0, 0);
+
+        verify(widgetService, times(2)).getAllIntersecting(0, 0, 256, 256, 1);
+    }
+
+    @Test
+    void zoomedOutTilesHideWidgetsSmallerThanAPixel() throws InvalidTileException {
+        int size = 256 << MAX_ZOOM;
+
+        given(widgetService.getAllIntersecting(0, 0, size, size, 1 << MAX_ZOOM)).willReturn(Collections.emptyList());
+        given(widgetService.countIntersecting(0, 0, size, size)).willReturn(5L);
+
+        WidgetTile tile = widgetTileService.getTile(0, 0, 0);
+
+        assertThat(tile.getWidgets().isEmpty(), is(true));
+        assertThat(tile.getHiddenWidgets(), is(5L));
+    }
+
+    @Test
+    void aTileTooFarToHaveItsCornerInALongIsEmpty() throws InvalidTileException {
+        // Its corner would wrap around to the origin of the board
+        WidgetTile tile = widgetTileService.getTile(0, 1L << 60, 0);
+
+        assertThat(tile.getWidgets().isEmpty(), is(true));
+        assertThat(tile.getHiddenWidgets(), is(0L));
+        verify(widgetService, times(0)).getAllIntersecting(anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void getATileWithInvalidZoom() {
+        assertThrows(
+                InvalidTileException.class,
+                () -> widgetTileService.getTile(MAX_ZOOM + 1, 0, 0),
+                "InvalidTileException was expected"
+        );
+    }
+
+    private Widget buildWidget(Long id, int x, int y) {
+        return Widget.builder()
+                .id(id)
+                .width(10)
+                .height(10)
+                .x(x)
+                .y(y)
+                .build();
+    }
+}
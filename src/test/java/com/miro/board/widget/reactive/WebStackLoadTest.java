@@ -0,0 +1,166 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.BoardApplication;
+import com.miro.board.widget.WidgetController;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the servlet and the reactive stacks serving the same in-memory board, at increasing
+ * numbers of concurrent connections, for a read-only and a mixed workload. Each connection sends its
+ * next request as soon as it gets the previous response. The client runs in the same JVM and on
+ * the same machine, so the figures are only meaningful relative to each other.
+ *
+ * Excluded from the default build, run it with: mvn test -Pbenchmark
+ * */
+@Tag("benchmark")
+class WebStackLoadTest {
+
+    private static final int WIDGETS = 10_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int[] CONNECTIONS = {64, 512, 2048};
+    private static final double[] WRITE_RATIOS = {0, 0.05};
+    private static final Duration WARM_UP = Duration.ofSeconds(3);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(10);
+
+    @Test
+    void compareServletAndReactiveStacks() {
+        System.out.printf("%-9s %6s %6s %10s %9s %9s %9s %7s%n",
+                "stack", "conns", "writes", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+
+        for (String stack : List.of("servlet", "reactive")) {
+            try (ConfigurableApplicationContext context = start(stack)) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                seedBoard(port);
+
+                for (double writeRatio : WRITE_RATIOS) {
+                    for (int connections : CONNECTIONS) {
+                        run(port, connections, writeRatio, WARM_UP);
+                        Result result = run(port, connections, writeRatio, MEASUREMENT);
+
+                        System.out.printf("%-9s %6d %5.0f%% %10.0f %9.2f %9.2f %9.2f %7d%n",
+                                stack, connections, writeRatio * 100,
+                                result.latencies.getTotalCount() / (double) MEASUREMENT.toSeconds(),
+                                result.latencies.getValueAtPercentile(50) / 1e6,
+                                result.latencies.getValueAtPercentile(99) / 1e6,
+                                result.latencies.getMaxValue() / 1e6,
+                                result.errors);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String stack) {
+        return new SpringApplicationBuilder(BoardApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.web-application-type=" + stack,
+                        "server.tomcat.max-connections=10000",
+                        // Reads are then served on the event loop
+                        "hibernation.idle-ms=0",
+                        "logging.level.root=WARN"
+                )
+                .run();
+    }
+
+    private static void seedBoard(int port) {
+        StringBuilder export = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int id = 1; id <= WIDGETS; id++) {
+            export.append(String.format("{\"id\":%d,\"width\":%d,\"height\":%d,\"x\":%d,\"y\":%d,\"z\":%d}%n",
+                    id, random.nextInt(1, 200), random.nextInt(1, 200), random.nextInt(-5000, 5000), random.nextInt(-5000, 5000), id));
+        }
+
+        HttpClient.create()
+                .headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, WidgetController.NDJSON))
+                .post()
+                .uri("http://localhost:" + port + "/widgets/import")
+                .send(ByteBufFlux.fromString(Mono.just(export.toString())))
+                .response()
+                .block();
+    }
+
+    private static Result run(int port, int connections, double writeRatio, Duration duration) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("load")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        HttpClient client = HttpClient.create(connectionProvider).baseUrl("http://localhost:" + port);
+
+        Histogram latencies = new ConcurrentHistogram(3);
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        try {
+            Flux.range(0, connections)
+                    .flatMap(connection -> request(client, writeRatio, latencies, errors)
+                            .repeat(() -> System.nanoTime() < deadline), connections)
+                    .blockLast();
+        } finally {
+            connectionProvider.dispose();
+        }
+
+        return new Result(latencies, errors.sum());
+    }
+
+    // Reads a widget or a page of the board, or moves a widget to the front with the given probability
+    private static Mono<Integer> request(HttpClient client, double writeRatio, Histogram latencies, LongAdder errors) {
+        return Mono.defer(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long id = random.nextLong(1, WIDGETS + 1);
+            double operation = random.nextDouble();
+            long start = System.nanoTime();
+
+            HttpClient.ResponseReceiver<?> receiver;
+            if (operation < writeRatio) {
+                String body = String.format("{\"width\":10,\"height\":10,\"x\":%d,\"y\":%d}", random.nextInt(1000), random.nextInt(1000));
+                receiver = client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                        .put()
+                        .uri("/widgets/" + id)
+                        .send(ByteBufFlux.fromString(Mono.just(body)));
+            } else if (operation < writeRatio + (1 - writeRatio) * 0.8) {
+                receiver = client.get().uri("/widgets/" + id);
+            } else {
+                receiver = client.get().uri("/widgets?size=" + PAGE_SIZE + "&page=" + random.nextInt(WIDGETS / PAGE_SIZE));
+            }
+
+            return receiver.responseSingle((response, content) -> content.asByteArray()
+                            .then(Mono.just(response.status().code())))
+                    .onErrorResume(error -> Mono.just(-1))
+                    .doOnNext(status -> {
+                        latencies.recordValue(System.nanoTime() - start);
+                        if (status < 200 || status >= 300) {
+                            errors.increment();
+                        }
+                    });
+        });
+    }
+
+    private static final class Result {
+        private final Histogram latencies;
+        private final long errors;
+
+        private Result(Histogram latencies, long errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+    }
+}
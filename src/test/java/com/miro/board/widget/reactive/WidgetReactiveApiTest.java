@@ -0,0 +1,313 @@
+package com.miro.board.widget.reactive;
+
+import com.miro.board.util.WidgetAssertionUtil;
+import com.miro.board.util.WidgetFactory;
+import com.miro.board.util.WidgetsPage;
+import com.miro.board.widget.WidgetController;
+import com.miro.board.widget.model.Widget;
+import com.miro.board.widget.model.WidgetRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"spring.main.web-application-type=reactive"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class WidgetReactiveApiTest {
+
+    private static final long FIRST_ID = 1L;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void createAndGetAWidget() {
+        WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(2);
+
+        Widget created = createWidget(widgetRequest);
+        WidgetAssertionUtil.assertWidget(created, widgetRequest, FIRST_ID);
+
+        Widget widget = webTestClient.get().uri("/widgets/{id}", FIRST_ID)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Widget.class)
+                .returnResult()
+                .getResponseBody();
+
+        WidgetAssertionUtil.assertWidget(widget, widgetRequest, FIRST_ID);
+    }
+
+    @Test
+    void createAWidgetWithInvalidRequest() {
+        WidgetRequest widgetRequest = WidgetFactory.buildWidgetRequest(2);
+        widgetRequest.setHeight(-1);
+
+        webTestClient.post().uri("/widgets")
+                .bodyValue(widgetRequest)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Validation error")
+                .jsonPath("$.errors[0].field").isEqualTo("height");
+    }
+
+    @Test
+    void getANotFoundWidget() {
+        webTestClient.get().uri("/widgets/{id}", FIRST_ID)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Widget was not found.");
+    }
+
+    @Test
+    void updateAWidgetMovesOtherWidgetsToTheTop() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        webTestClient.put().uri("/widgets/{id}", 2)
+                .bodyValue(WidgetFactory.buildWidgetRequest(1))
+                .exchange()
+                .expectStatus().isOk();
+
+        assertThat(getZIndexes(getWidgets("/widgets")), contains(1, 2));
+        assertThat(getIds(getWidgets("/widgets")), contains(2L, 1L));
+    }
+
+    @Test
+    void undoAndRedoAnUpdate() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+        webTestClient.put().uri("/widgets/{id}", 2)
+                .bodyValue(WidgetFactory.buildWidgetRequest(1))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.post().uri("/widgets/undo")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.applied").isEqualTo(1)
+                .jsonPath("$.redoable").isEqualTo(1);
+
+        assertThat(getIds(getWidgets("/widgets")), contains(1L, 2L));
+
+        webTestClient.post().uri("/widgets/redo?steps=5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.applied").isEqualTo(1);
+
+        assertThat(getIds(getWidgets("/widgets")), contains(2L, 1L));
+    }
+
+    @Test
+    void getAllWidgetsReturnsTheBoardVersion() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        String version = webTestClient.get().uri("/widgets?page=0&size=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(WidgetController.BOARD_VERSION_HEADER)
+                .returnResult(WidgetsPage.class)
+                .getResponseHeaders()
+                .getFirst(WidgetController.BOARD_VERSION_HEADER);
+
+        createWidget(WidgetFactory.buildWidgetRequest(0));
+
+        WidgetsPage page = getWidgets("/widgets?page=1&size=1&version=" + version);
+        assertThat(getZIndexes(page), contains(2));
+        assertThat(page.getTotalElements(), is(2));
+    }
+
+    @Test
+    void getAllWidgetsWithInvalidPageSizeOrSort() {
+        webTestClient.get().uri("/widgets?size=501")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        webTestClient.get().uri("/widgets?sort=id")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    void getAllWidgetsSortedByProperty() {
+        WidgetRequest left = WidgetFactory.buildWidgetRequest(1);
+        left.setX(100);
+        WidgetRequest right = WidgetFactory.buildWidgetRequest(2);
+        right.setX(-100);
+        createWidget(left);
+        createWidget(right);
+
+        assertThat(getZIndexes(getWidgets("/widgets?sort=x,desc")), contains(1, 2));
+        assertThat(getZIndexes(getWidgets("/widgets?sort=x")), contains(2, 1));
+    }
+
+    @Test
+    void getAndCountTheWidgetsWithinAZRange() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(3));
+        createWidget(WidgetFactory.buildWidgetRequest(5));
+
+        assertThat(getZIndexes(getWidgets("/widgets?zFrom=2")), contains(3, 5));
+        assertThat(getZIndexes(getWidgets("/widgets?zTo=4&sort=z,desc")), contains(3, 1));
+
+        webTestClient.get().uri("/widgets/count?zTo=4")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Long.class).isEqualTo(2L);
+
+        webTestClient.get().uri("/widgets?zFrom=2&version=1")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    void moveAWidgetToTheFront() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        Widget widget = webTestClient.post().uri("/widgets/{id}/front", FIRST_ID)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Widget.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(widget, is(notNullValue()));
+        assertThat(widget.getZ(), is(3));
+    }
+
+    @Test
+    void getTheTopmostWidgetAtAPoint() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        webTestClient.get().uri("/widgets/at?x=35&y=45")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(2);
+
+        webTestClient.get().uri("/widgets/at?x=35")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void exportAndImportTheBoard() {
+        createWidget(WidgetFactory.buildWidgetRequest(1));
+        createWidget(WidgetFactory.buildWidgetRequest(2));
+
+        String export = webTestClient.get().uri("/widgets/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(WidgetController.NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(export, is(notNullValue()));
+        assertThat(export.lines().count(), is(2L));
+
+        webTestClient.delete().uri("/widgets/{id}", FIRST_ID).exchange().expectStatus().isOk();
+
+        webTestClient.post().uri("/widgets/import")
+                .contentType(MediaType.parseMediaType(WidgetController.NDJSON))
+                .bodyValue(export)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        assertThat(getIds(getWidgets("/widgets")), contains(1L, 2L));
+    }
+
+    @Test
+    void importABoardLargerThanABatchAsItStreamsIn() {
+        StringBuilder board = new StringBuilder();
+        for (int z = 1; z <= 1000; z++) {
+            board.append("{\"id\": ").append(z).append(", \"width\": 1, \"height\": 1, \"x\": 0, \"y\": 0, \"z\": ").append(z).append("}\n");
+        }
+
+        webTestClient.post().uri("/widgets/import")
+                .contentType(MediaType.parseMediaType(WidgetController.NDJSON))
+                .bodyValue(board.toString())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        String export = webTestClient.get().uri("/widgets/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(export.lines().count(), is(1000L));
+
+        // A widget out of order past the first batch fails the import, leaving the board as it was
+        board.append("{\"id\": 1001, \"width\": 1, \"height\": 1, \"x\": 0, \"y\": 0, \"z\": 1}\n");
+
+        webTestClient.post().uri("/widgets/import")
+                .contentType(MediaType.parseMediaType(WidgetController.NDJSON))
+                .bodyValue(board.toString())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        webTestClient.get().uri("/widgets/{id}", 1000L).exchange().expectStatus().isOk();
+        webTestClient.get().uri("/widgets/{id}", 1001L).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void importAnInvalidBoard() {
+        webTestClient.post().uri("/widgets/import")
+                .contentType(MediaType.parseMediaType(WidgetController.NDJSON))
+                .bodyValue("{\"id\": 1, \"width\": 1, \"height\": 1, \"x\": 0, \"y\": 0, \"z\": 1}\n{\"id\": 2,\n")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        webTestClient.post().uri("/widgets/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[]")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    private Widget createWidget(WidgetRequest widgetRequest) {
+        return webTestClient.post().uri("/widgets")
+                .bodyValue(widgetRequest)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Widget.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private WidgetsPage getWidgets(String uri) {
+        return webTestClient.get().uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(WidgetsPage.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static List<Integer> getZIndexes(WidgetsPage page) {
+        return page.getContent().stream().map(Widget::getZ).collect(Collectors.toList());
+    }
+
+    private static List<Long> getIds(WidgetsPage page) {
+        return page.getContent().stream().map(Widget::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,72 @@
+package com.miro.board.widget.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+class PersistentSortedTreeTest {
+
+    @Test
+    void behavesLikeASortedSetUnderRandomUpdates() {
+        Random random = new Random(42);
+        TreeSet<Integer> expected = new TreeSet<>();
+        PersistentSortedTree<Integer> tree = PersistentSortedTree.empty(Comparator.naturalOrder());
+
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(500);
+
+            if (random.nextBoolean()) {
+                expected.add(value);
+                tree = tree.insert(value);
+            } else {
+                expected.remove(value);
+                tree = tree.remove(value);
+            }
+        }
+
+        List<Integer> expectedList = new ArrayList<>(expected);
+
+        assertThat(tree.toList(), is(expectedList));
+        assertThat(tree.size(), is(expected.size()));
+
+        for (int index = 0; index < expectedList.size(); index++) {
+            assertThat(tree.get(index), is(expectedList.get(index)));
+            assertThat(tree.rank(expectedList.get(index)), is(index));
+        }
+    }
+
+    @Test
+    void oldVersionsAreNotAffectedByUpdates() {
+        PersistentSortedTree<Integer> first = PersistentSortedTree.<Integer>empty(Comparator.naturalOrder()).insert(1).insert(2);
+        PersistentSortedTree<Integer> second = first.insert(3).remove(1);
+
+        assertThat(first.toList(), contains(1, 2));
+        assertThat(second.toList(), contains(2, 3));
+    }
+
+    @Test
+    void iteratesFromAPositionInBothDirections() {
+        PersistentSortedTree<Integer> tree = PersistentSortedTree.fromSorted(Comparator.naturalOrder(), List.of(1, 2, 3, 4, 5, 6, 7));
+
+        assertThat(toList(tree.iterator(4)), contains(5, 6, 7));
+        assertThat(toList(tree.descendingIterator(2)), contains(5, 4, 3, 2, 1));
+        assertThat(toList(tree.iterator(7)).isEmpty(), is(true));
+        assertThat(tree.rank(0), is(0));
+        assertThat(tree.rank(8), is(7));
+    }
+
+    private static List<Integer> toList(Iterator<Integer> iterator) {
+        List<Integer> values = new ArrayList<>();
+        iterator.forEachRemaining(values::add);
+        return values;
+    }
+}
@@ -0,0 +1,369 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+class WidgetInMemoryRepositoryTest {
+
+    private WidgetInMemoryRepository widgetRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        widgetRepository = new WidgetInMemoryRepository();
+    }
+
+    @Test
+    void findAllIsSortedByZIndexByDefault() {
+        widgetRepository.save(buildWidget(3, 10));
+        widgetRepository.save(buildWidget(1, 30));
+        widgetRepository.save(buildWidget(2, 20));
+
+        Page<Widget> page = widgetRepository.findAll(PageRequest.of(0, 10));
+
+        assertThat(getZIndexes(page), contains(1, 2, 3));
+        assertThat(page.getTotalElements(), is(3L));
+    }
+
+    @Test
+    void findAllSortedBySecondaryIndex() {
+        widgetRepository.save(buildWidget(3, 10));
+        widgetRepository.save(buildWidget(1, 30));
+        widgetRepository.save(buildWidget(2, 20));
+
+        Page<Widget> ascending = widgetRepository.findAll(PageRequest.of(0, 2, Sort.by("x")));
+        Page<Widget> descending = widgetRepository.findAll(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "x")));
+
+        assertThat(getZIndexes(ascending), contains(3, 2));
+        assertThat(getZIndexes(descending), contains(3));
+        assertThat(descending.getTotalElements(), is(3L));
+    }
+
+    @Test
+    void aDescendingSortReversesTheTies() {
+        widgetRepository.save(buildWidget(1, 10));
+        widgetRepository.save(buildWidget(2, 10));
+        widgetRepository.save(buildWidget(3, 20));
+
+        Page<Widget> descending = widgetRepository.findAll(PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "x")));
+
+        assertThat(getZIndexes(descending), contains(3, 2, 1));
+    }
+
+    @Test
+    void secondaryIndexesFollowUpdatesAndZIndexShifts() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 10));
+
+        widgetRepository.increaseZIndex(Collections.singletonList(second.getId()));
+        widgetRepository.increaseZIndex(Collections.singletonList(first.getId()));
+
+        Widget updated = buildWidget(1, 50);
+        updated.setId(second.getId());
+        widgetRepository.save(updated);
+
+        Page<Widget> page = widgetRepository.findAll(PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "x")));
+
+        assertThat(page.getContent().get(0).getId(), is(second.getId()));
+        assertThat(page.getContent().get(1).getId(), is(first.getId()));
+        assertThat(page.getContent().get(1).getZ(), is(2));
+        assertThat(page.getTotalElements(), is(2L));
+    }
+
+    @Test
+    void findAllAndCountWithinAZRange() {
+        for (int z : new int[]{-5, 1, 3, 4, 8, 12}) {
+            widgetRepository.save(buildWidget(z, 10));
+        }
+
+        Page<Widget> ascending = widgetRepository.findAllByParentIdIsNullAndZBetween(2, 8, PageRequest.of(0, 2, Sort.by("z")));
+        Page<Widget> descending = widgetRepository.findAllByParentIdIsNullAndZBetween(2, 8, PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "z")));
+
+        assertThat(getZIndexes(ascending), contains(3, 4));
+        assertThat(ascending.getTotalElements(), is(3L));
+        assertThat(getZIndexes(descending), contains(3));
+        assertThat(widgetRepository.findAllByParentIdIsNullAndZBetween(5, 7, PageRequest.of(0, 10)).getTotalElements(), is(0L));
+        assertThat(widgetRepository.countByParentIdIsNullAndZBetween(Integer.MIN_VALUE, 3), is(3L));
+        assertThat(widgetRepository.countByParentIdIsNullAndZBetween(4, Integer.MAX_VALUE), is(3L));
+        assertThat(widgetRepository.countByParentIdIsNullAndZBetween(9, 11), is(0L));
+    }
+
+    @Test
+    void zIndexesAreScopedToTheWidgetsOfAFrame() {
+        Widget frame = widgetRepository.save(buildWidget(1, 0));
+        Widget other = widgetRepository.save(buildWidget(2, 0));
+        Widget firstChild = widgetRepository.save(buildChild(frame.getId(), 1));
+        Widget secondChild = widgetRepository.save(buildChild(frame.getId(), 2));
+        widgetRepository.save(buildChild(other.getId(), 5));
+
+        assertThat(widgetRepository.getZIndexRun(frame.getId(), 1, null), contains(firstChild.getId(), secondChild.getId()));
+        assertThat(widgetRepository.getZIndexRun(null, 1, null), contains(frame.getId(), other.getId()));
+        assertThat(widgetRepository.getMaxZIndex(frame.getId()), is(2));
+        assertThat(widgetRepository.getMinZIndex(other.getId()), is(5));
+        assertThat(widgetRepository.getMaxZIndex(null), is(2));
+        assertThat(widgetRepository.getMaxZIndex(firstChild.getId()), is(0));
+        assertThat(widgetRepository.findByParentIdAndZ(frame.getId(), 2), is(Optional.of(secondChild)));
+        assertThat(widgetRepository.findByParentIdAndZ(null, 5), is(Optional.empty()));
+        assertThat(getIds(widgetRepository.findAllByParentIdOrderByZ(frame.getId())), contains(firstChild.getId(), secondChild.getId()));
+        assertThat(widgetRepository.existsByParentId(frame.getId()), is(true));
+        assertThat(widgetRepository.existsByParentId(firstChild.getId()), is(false));
+        assertThat(widgetRepository.countByParentIdIsNullAndZBetween(Integer.MIN_VALUE, Integer.MAX_VALUE), is(2L));
+    }
+
+    @Test
+    void findAllInStackingOrderPutsTheWidgetsOfAFrameRightAfterIt() {
+        Widget back = widgetRepository.save(buildWidget(1, 0));
+        Widget front = widgetRepository.save(buildWidget(2, 0));
+        Widget frontChild = widgetRepository.save(buildChild(front.getId(), -3));
+        Widget firstBackChild = widgetRepository.save(buildChild(back.getId(), 7));
+        Widget secondBackChild = widgetRepository.save(buildChild(back.getId(), 9));
+
+        Page<Widget> page = widgetRepository.findAllInStackingOrder(PageRequest.of(1, 2));
+
+        assertThat(getIds(widgetRepository.findAllInStackingOrder(PageRequest.of(0, 10)).getContent()),
+                contains(back.getId(), firstBackChild.getId(), secondBackChild.getId(), front.getId(), frontChild.getId()));
+        assertThat(getIds(page.getContent()), contains(secondBackChild.getId(), front.getId()));
+        assertThat(page.getTotalElements(), is(5L));
+    }
+
+    @Test
+    void zIndexRunStopsAtTheFirstGap() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 10));
+        widgetRepository.save(buildWidget(4, 10));
+
+        assertThat(widgetRepository.getZIndexRun(null, 1, null), contains(first.getId(), second.getId()));
+        assertThat(widgetRepository.getZIndexRun(null, 3, null), is(Collections.emptyList()));
+    }
+
+    @Test
+    void zIndexRunStopsAtTheExcludedWidget() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 10));
+        widgetRepository.save(buildWidget(3, 10));
+
+        assertThat(widgetRepository.getZIndexRun(null, 1, second.getId()), contains(first.getId()));
+    }
+
+    @Test
+    void findByZIndex() {
+        widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(3, 10));
+
+        assertThat(widgetRepository.findByParentIdAndZ(null, 3), is(Optional.of(second)));
+        assertThat(widgetRepository.findByParentIdAndZ(null, 2), is(Optional.empty()));
+        assertThat(widgetRepository.getMinZIndex(null), is(1));
+    }
+
+    @Test
+    void zIndexShiftIntoTheSlotOfTheWidgetBeingUpdated() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 20));
+
+        widgetRepository.increaseZIndex(Collections.singletonList(first.getId()));
+
+        Widget updated = buildWidget(1, 20);
+        updated.setId(second.getId());
+        widgetRepository.save(updated);
+
+        Page<Widget> page = widgetRepository.findAll(PageRequest.of(0, 10));
+
+        assertThat(getZIndexes(page), contains(1, 2));
+        assertThat(getIds(page.getContent()), contains(second.getId(), first.getId()));
+    }
+
+    @Test
+    void aZIndexShiftIsPublishedBeforeTheSaveCausingIt() {
+        Widget shifted = widgetRepository.save(buildWidget(1, 10));
+        long version = widgetRepository.getCurrentVersion().getAsLong();
+
+        widgetRepository.increaseZIndex(Collections.singletonList(shifted.getId()));
+
+        assertThat(widgetRepository.getCurrentVersion().getAsLong(), is(version + 1));
+        assertThat(getZIndexes(widgetRepository.findAll(PageRequest.of(0, 10))), contains(2));
+    }
+
+    @Test
+    void saveAllPublishesASingleVersion() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 20));
+        long version = widgetRepository.retainCurrentVersion().getAsLong();
+
+        Widget movedFirst = buildWidget(1, 110);
+        movedFirst.setId(first.getId());
+        Widget movedSecond = buildWidget(2, 112);
+        movedSecond.setId(second.getId());
+        widgetRepository.saveAll(List.of(movedFirst, movedSecond));
+
+        assertThat(widgetRepository.retainCurrentVersion().getAsLong(), is(version + 1));
+        assertThat(getIds(widgetRepository.findAllContainingPoint(115, 5, PageRequest.of(0, 10))), contains(second.getId(), first.getId()));
+        assertThat(widgetRepository.findAllContainingPoint(15, 5, PageRequest.of(0, 10)), is(Collections.emptyList()));
+    }
+
+    @Test
+    void replaceAllBuildsEveryIndex() {
+        widgetRepository.save(buildWidget(1, 10));
+
+        Widget back = buildWidget(-5, 30);
+        back.setId(4L);
+        Widget front = buildWidget(2, 20);
+        front.setId(9L);
+        widgetRepository.replaceAll(List.of(back, front));
+
+        assertThat(getZIndexes(widgetRepository.findAll(PageRequest.of(0, 10, Sort.by("x")))), contains(2, -5));
+        assertThat(getIds(widgetRepository.streamAllByParentAndZ().collect(Collectors.toList())), contains(4L, 9L));
+        assertThat(getIds(widgetRepository.findAllContainingPoint(25, 5, PageRequest.of(0, 10))), contains(9L));
+        assertThat(widgetRepository.findById(1L), is(Optional.empty()));
+        assertThat(widgetRepository.save(buildWidget(3, 0)).getId(), is(10L));
+    }
+
+    @Test
+    void findAllContainingPointFromTheForeground() {
+        Widget small = widgetRepository.save(buildWidget(1, 10));
+        Widget oversized = widgetRepository.save(Widget.builder().width(100_000).height(100_000).x(-50_000).y(-50_000).z(2).build());
+        Widget top = widgetRepository.save(buildWidget(3, 15));
+
+        List<Widget> widgets = widgetRepository.findAllContainingPoint(16, 5, PageRequest.of(0, 10));
+
+        assertThat(getIds(widgets), contains(top.getId(), oversized.getId(), small.getId()));
+        assertThat(getIds(widgetRepository.findAllContainingPoint(16, 5, PageRequest.of(1, 1))), contains(oversized.getId()));
+        assertThat(getIds(widgetRepository.findAllContainingPoint(20, 5, PageRequest.of(0, 10))), contains(top.getId(), oversized.getId()));
+        assertThat(widgetRepository.findAllContainingPoint(60_000, 0, PageRequest.of(0, 10)).isEmpty(), is(true));
+    }
+
+    @Test
+    void findAllContainingPointFollowsUpdatesAndDeletes() {
+        Widget widget = widgetRepository.save(buildWidget(1, 10));
+
+        Widget moved = buildWidget(1, 1000);
+        moved.setId(widget.getId());
+        widgetRepository.save(moved);
+
+        assertThat(widgetRepository.findAllContainingPoint(15, 5, PageRequest.of(0, 10)).isEmpty(), is(true));
+        assertThat(getIds(widgetRepository.findAllContainingPoint(1005, 5, PageRequest.of(0, 10))), contains(widget.getId()));
+
+        widgetRepository.delete(moved);
+
+        assertThat(widgetRepository.findAllContainingPoint(1005, 5, PageRequest.of(0, 10)).isEmpty(), is(true));
+    }
+
+    @Test
+    void findAllIntersectingInZOrder() {
+        Widget top = widgetRepository.save(buildWidget(3, 100));
+        Widget oversized = widgetRepository.save(Widget.builder().width(100_000).height(5).x(-50_000).y(0).z(2).build());
+        Widget bottom = widgetRepository.save(buildWidget(1, 95));
+        widgetRepository.save(buildWidget(4, 2000));
+
+        assertThat(getIds(widgetRepository.findAllIntersecting(90, 0, 200, 10, 1)), contains(bottom.getId(), oversized.getId(), top.getId()));
+        assertThat(getIds(widgetRepository.findAllIntersecting(90, 0, 200, 10, 11)), contains(oversized.getId()));
+        assertThat(widgetRepository.countIntersecting(90, 0, 200, 10), is(3L));
+        assertThat(widgetRepository.countIntersecting(-1_000_000, -1_000_000, 1_000_000, 1_000_000), is(4L));
+    }
+
+    @Test
+    void aHibernatedBoardIsLoadedBackByTheNextAccess(@TempDir Path directory) throws IOException {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(Widget.builder().width(20).height(30).x(-40).y(50).z(7).build());
+        long version = widgetRepository.getCurrentVersion().getAsLong();
+        Path file = directory.resolve("board");
+        Timer wakeTimer = new SimpleMeterRegistry().timer("wake");
+
+        assertThat(widgetRepository.hibernate(file, wakeTimer), is(true));
+        assertThat(widgetRepository.isHibernating(), is(true));
+        assertThat(Files.exists(file), is(true));
+
+        assertThat(getIds(widgetRepository.findAllContainingPoint(-30, 60, PageRequest.of(0, 10))), contains(second.getId()));
+        assertThat(widgetRepository.isHibernating(), is(false));
+        assertThat(wakeTimer.count(), is(1L));
+        assertThat(Files.exists(file), is(false));
+        assertThat(widgetRepository.getCurrentVersion().getAsLong(), is(version));
+
+        Widget woken = widgetRepository.findById(first.getId()).orElseThrow();
+        assertThat(woken.getLastModified(), is(first.getLastModified()));
+        assertThat(woken.getX(), is(10));
+        assertThat(widgetRepository.findById(second.getId()).orElseThrow().getHeight(), is(30));
+        assertThat(widgetRepository.save(buildWidget(8, 0)).getId(), is(second.getId() + 1));
+    }
+
+    @Test
+    void aBoardBeingPagedThroughDoesNotHibernate(@TempDir Path directory) throws IOException {
+        widgetRepository.save(buildWidget(1, 10));
+        widgetRepository.retainCurrentVersion();
+
+        assertThat(widgetRepository.hibernate(directory.resolve("board"), new SimpleMeterRegistry().timer("wake")), is(false));
+        assertThat(widgetRepository.isHibernating(), is(false));
+    }
+
+    @Test
+    void retainedVersionsCanBeReadAfterTheBoardChanges() {
+        widgetRepository.save(buildWidget(1, 10));
+        long version = widgetRepository.retainCurrentVersion().getAsLong();
+
+        widgetRepository.save(buildWidget(2, 20));
+
+        Optional<Page<Widget>> oldPage = widgetRepository.findAllAtVersion(PageRequest.of(0, 10), version);
+        Optional<Page<Widget>> currentPage = widgetRepository.findAllAtVersion(PageRequest.of(0, 10), version + 1);
+
+        assertThat(oldPage.isPresent(), is(true));
+        assertThat(getZIndexes(oldPage.get()), contains(1));
+        assertThat(currentPage.isPresent(), is(true));
+        assertThat(getZIndexes(currentPage.get()), contains(1, 2));
+        assertThat(widgetRepository.findAllAtVersion(PageRequest.of(0, 10), version - 1).isPresent(), is(false));
+    }
+
+    @Test
+    void versionsExpireAfterTheRetentionPeriod() throws InterruptedException {
+        widgetRepository = new WidgetInMemoryRepository(0);
+        widgetRepository.save(buildWidget(1, 10));
+        long version = widgetRepository.retainCurrentVersion().getAsLong();
+
+        Thread.sleep(5);
+        widgetRepository.save(buildWidget(2, 20));
+
+        assertThat(widgetRepository.findAllAtVersion(PageRequest.of(0, 10), version).isPresent(), is(false));
+    }
+
+    private Widget buildWidget(int zIndex, int x) {
+        return Widget.builder()
+                .lastModified(LocalDateTime.now())
+                .width(10)
+                .height(10)
+                .x(x)
+                .y(0)
+                .z(zIndex)
+                .build();
+    }
+
+    private Widget buildChild(Long parentId, int zIndex) {
+        Widget widget = buildWidget(zIndex, 0);
+        widget.setParentId(parentId);
+        return widget;
+    }
+
+    private List<Long> getIds(List<Widget> widgets) {
+        return widgets.stream().map(Widget::getId).collect(Collectors.toList());
+    }
+
+    private List<Integer> getZIndexes(Page<Widget> page) {
+        return page.getContent().stream().map(Widget::getZ).collect(Collectors.toList());
+    }
+}
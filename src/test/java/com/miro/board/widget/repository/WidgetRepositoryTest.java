@@ -0,0 +1,125 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+@DataJpaTest
+class WidgetRepositoryTest {
+
+    @Autowired
+    @Qualifier("SQLRepository")
+    private WidgetRepository widgetRepository;
+
+    @Test
+    void zIndexRunStopsAtTheFirstGap() {
+        Widget first = widgetRepository.save(buildWidget(1));
+        Widget second = widgetRepository.save(buildWidget(2));
+        widgetRepository.save(buildWidget(4));
+        widgetRepository.save(buildWidget(5));
+
+        assertThat(widgetRepository.getZIndexRun(null, 1, null), contains(first.getId(), second.getId()));
+        assertThat(widgetRepository.getZIndexRun(null, 3, null), is(Collections.emptyList()));
+    }
+
+    @Test
+    void zIndexRunStopsAtTheExcludedWidget() {
+        Widget first = widgetRepository.save(buildWidget(1));
+        Widget second = widgetRepository.save(buildWidget(2));
+        widgetRepository.save(buildWidget(3));
+
+        assertThat(widgetRepository.getZIndexRun(null, 1, second.getId()), contains(first.getId()));
+    }
+
+    @Test
+    void zIndexRunIgnoresAnExcludedWidgetBelowIt() {
+        Widget excluded = widgetRepository.save(buildWidget(1));
+        Widget second = widgetRepository.save(buildWidget(2));
+        Widget third = widgetRepository.save(buildWidget(3));
+
+        assertThat(widgetRepository.getZIndexRun(null, 2, excluded.getId()), contains(second.getId(), third.getId()));
+    }
+
+    @Test
+    void zIndexQueriesAreScopedToTheWidgetsOfAFrame() {
+        Widget frame = widgetRepository.save(buildWidget(1));
+        Widget other = widgetRepository.save(buildWidget(2));
+        Widget firstChild = widgetRepository.save(buildChild(frame.getId(), 1));
+        Widget secondChild = widgetRepository.save(buildChild(frame.getId(), 2));
+        widgetRepository.save(buildChild(other.getId(), 5));
+
+        assertThat(widgetRepository.getZIndexRun(frame.getId(), 1, null), contains(firstChild.getId(), secondChild.getId()));
+        assertThat(widgetRepository.getZIndexRun(null, 1, secondChild.getId()), contains(frame.getId(), other.getId()));
+        assertThat(widgetRepository.getMaxZIndex(frame.getId()), is(2));
+        assertThat(widgetRepository.getMinZIndex(other.getId()), is(5));
+        assertThat(widgetRepository.getMaxZIndex(null), is(2));
+        assertThat(widgetRepository.findByParentIdAndZ(null, 5), is(Optional.empty()));
+        assertThat(widgetRepository.countByParentIdIsNullAndZBetween(Integer.MIN_VALUE, Integer.MAX_VALUE), is(2L));
+    }
+
+    @Test
+    void aRunLongerThanABatchIsFoundAndShiftedAsOneRange() {
+        Widget frame = widgetRepository.save(buildWidget(1));
+        List<Long> run = new ArrayList<>();
+        for (int z = 1; z <= 150; z++) {
+            run.add(widgetRepository.save(buildChild(frame.getId(), z)).getId());
+        }
+        Widget aboveTheGap = widgetRepository.save(buildChild(frame.getId(), 152));
+
+        assertThat(widgetRepository.getZIndexRun(frame.getId(), 1, null), is(run));
+
+        widgetRepository.increaseZIndexRun(frame.getId(), 1, 150);
+
+        assertThat(widgetRepository.findByParentIdAndZ(frame.getId(), 1), is(Optional.empty()));
+        assertThat(widgetRepository.findByParentIdAndZ(frame.getId(), 151).map(Widget::getId), is(Optional.of(run.get(149))));
+        assertThat(widgetRepository.findByParentIdAndZ(frame.getId(), 152).map(Widget::getId), is(Optional.of(aboveTheGap.getId())));
+        assertThat(widgetRepository.findByParentIdAndZ(null, 1).map(Widget::getId), is(Optional.of(frame.getId())));
+    }
+
+    @Test
+    void findAllInStackingOrderPutsTheWidgetsOfAFrameRightAfterIt() {
+        Widget back = widgetRepository.save(buildWidget(1));
+        Widget front = widgetRepository.save(buildWidget(2));
+        Widget frontChild = widgetRepository.save(buildChild(front.getId(), -3));
+        Widget firstBackChild = widgetRepository.save(buildChild(back.getId(), 7));
+        Widget secondBackChild = widgetRepository.save(buildChild(back.getId(), 9));
+
+        Page<Widget> page = widgetRepository.findAllInStackingOrder(PageRequest.of(1, 2));
+
+        assertThat(widgetRepository.findAllInStackingOrder(PageRequest.of(0, 10)).map(Widget::getId).getContent(),
+                contains(back.getId(), firstBackChild.getId(), secondBackChild.getId(), front.getId(), frontChild.getId()));
+        assertThat(page.map(Widget::getId).getContent(), contains(secondBackChild.getId(), front.getId()));
+        assertThat(page.getTotalElements(), is(5L));
+    }
+
+    private Widget buildChild(Long parentId, int zIndex) {
+        Widget widget = buildWidget(zIndex);
+        widget.setParentId(parentId);
+        return widget;
+    }
+
+    private Widget buildWidget(int zIndex) {
+        return Widget.builder()
+                .lastModified(LocalDateTime.now())
+                .width(10)
+                .height(10)
+                .x(0)
+                .y(0)
+                .z(zIndex)
+                .build();
+    }
+}
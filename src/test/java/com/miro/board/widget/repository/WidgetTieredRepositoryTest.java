@@ -0,0 +1,141 @@
+package com.miro.board.widget.repository;
+
+import com.miro.board.widget.model.Widget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest(properties = {"use-tiered-repository=true", "tiered-repository.flush-interval-ms=3600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class WidgetTieredRepositoryTest {
+
+    @Autowired
+    @Qualifier("SQLRepository")
+    private WidgetRepository sqlRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private WidgetTieredRepository widgetRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        widgetRepository = startRepository();
+    }
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        widgetRepository.stop();
+    }
+
+    @Test
+    void writesAreFlushedToTheDatabase() {
+        Widget first = widgetRepository.save(buildWidget(1, 10));
+        Widget second = widgetRepository.save(buildWidget(2, 20));
+
+        assertThat(countRows(), is(0));
+        assertThat(widgetRepository.getDirtyWidgets(), is(2));
+
+        widgetRepository.flush();
+
+        assertThat(getZIndexesById(first.getId()), contains(1));
+        assertThat(getZIndexesById(second.getId()), contains(2));
+        assertThat(widgetRepository.getDirtyWidgets(), is(0));
+    }
+
+    @Test
+    void writesToTheSameWidgetAreCoalesced() {
+        Widget widget = widgetRepository.save(buildWidget(1, 10));
+
+        for (int z = 2; z <= 5; z++) {
+            Widget updated = buildWidget(z, 10);
+            updated.setId(widget.getId());
+            widgetRepository.save(updated);
+        }
+
+        assertThat(widgetRepository.getDirtyWidgets(), is(1));
+
+        widgetRepository.flush();
+
+        assertThat(getZIndexesById(widget.getId()), contains(5));
+    }
+
+    @Test
+    void zIndexShiftsAreFlushedWithTheWriteCausingThem() {
+        Widget shifted = widgetRepository.save(buildWidget(1, 10));
+        widgetRepository.flush();
+
+        widgetRepository.increaseZIndex(Collections.singletonList(shifted.getId()));
+
+        assertThat(widgetRepository.getDirtyWidgets(), is(1));
+
+        Widget created = widgetRepository.save(buildWidget(1, 20));
+        widgetRepository.flush();
+
+        assertThat(getZIndexesById(shifted.getId()), contains(2));
+        assertThat(getZIndexesById(created.getId()), contains(1));
+    }
+
+    @Test
+    void deletionsAreFlushedToTheDatabase() {
+        Widget widget = widgetRepository.save(buildWidget(1, 10));
+        widgetRepository.flush();
+
+        widgetRepository.delete(widget);
+        widgetRepository.flush();
+
+        assertThat(countRows(), is(0));
+    }
+
+    @Test
+    void boardIsLoadedFromTheDatabaseOnStartup() throws InterruptedException {
+        widgetRepository.save(buildWidget(2, 10));
+        widgetRepository.save(buildWidget(1, 20));
+        widgetRepository.stop();
+
+        widgetRepository = startRepository();
+
+        assertThat(widgetRepository.getMaxZIndex(null), is(2));
+        assertThat(widgetRepository.findById(2L).map(Widget::getX).orElse(null), is(20));
+        assertThat(widgetRepository.save(buildWidget(3, 30)).getId(), is(3L));
+    }
+
+    private WidgetTieredRepository startRepository() {
+        WidgetTieredRepository repository = new WidgetTieredRepository(sqlRepository, jdbcTemplate, new SimpleMeterRegistry(), 60_000, 3_600_000, 100);
+        repository.start();
+        return repository;
+    }
+
+    private int countRows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM widget", Integer.class);
+    }
+
+    private List<Integer> getZIndexesById(Long id) {
+        return jdbcTemplate.queryForList("SELECT z FROM widget WHERE id = ?", Integer.class, id);
+    }
+
+    private Widget buildWidget(int z, int x) {
+        return Widget.builder()
+                .lastModified(LocalDateTime.now())
+                .width(10)
+                .height(10)
+                .x(x)
+                .y(0)
+                .z(z)
+                .build();
+    }
+}